@@ -0,0 +1,150 @@
+package simpledb.buffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import simpledb.file.Block;
+
+/**
+ * The ARC (adaptive replacement cache) policy. Resident blocks are split
+ * between T1, the blocks that have been referenced once since they were read,
+ * and T2, the blocks that have been referenced more than once. The ids of
+ * blocks recently replaced from T1 and T2 are remembered in B1 and B2. A miss
+ * on a block in B1 means that T1 was too small, and a miss on a block in B2
+ * means that T2 was too small; the policy moves its target size for T1
+ * accordingly. One-time references from a scan stay in T1, so they can only
+ * push out other blocks of T1 unless the workload shows that recency matters.
+ * <p>
+ * The lists are kept in least-recently-used order, and the victim is the
+ * first unpinned buffer of the appropriate list.
+ */
+class ARCPolicy implements ReplacementPolicy {
+
+    private BufferQueue free = new BufferQueue();
+    private BufferQueue t1 = new BufferQueue();
+    private BufferQueue t2 = new BufferQueue();
+    private Map<Block, Boolean> b1 = new LinkedHashMap<Block, Boolean>();
+    private Map<Block, Boolean> b2 = new LinkedHashMap<Block, Boolean>();
+    private boolean[] fresh;
+    private int capacity;
+    private int target = 0; // the target size of t1
+    private BufferQueue victimQueue; // the queue of the last chosen buffer
+    private Block victimBlock;
+
+    public void reset(Buffer[] pool) {
+        free.clear();
+        t1.clear();
+        t2.clear();
+        b1.clear();
+        b2.clear();
+        capacity = pool.length;
+        fresh = new boolean[pool.length];
+        target = 0;
+        for (Buffer buff : pool) {
+            if (buff.block() == null) {
+                free.addLast(buff);
+            } else {
+                t1.addLast(buff);
+            }
+        }
+    }
+
+    public void assigned(Buffer buff) {
+        Block blk = buff.block();
+        if (b1.remove(blk) != null || b2.remove(blk) != null) {
+            t2.addLast(buff);
+        } else {
+            t1.addLast(buff);
+        }
+        fresh[buff.index()] = true;
+    }
+
+    public void pinned(Buffer buff) {
+        if (fresh[buff.index()]) {
+            fresh[buff.index()] = false;
+        } else if (t1.contains(buff) || t2.contains(buff)) {
+            t2.moveToLast(buff);
+        }
+    }
+
+    public void unpinned(Buffer buff) {
+    }
+
+    public Buffer chooseUnpinnedBuffer(Block blk) {
+        boolean inB1 = (blk != null) && b1.containsKey(blk);
+        boolean inB2 = !inB1 && (blk != null) && b2.containsKey(blk);
+        if (inB1) {
+            target = Math.min(capacity,
+                    target + Math.max(b2.size() / b1.size(), 1));
+        } else if (inB2) {
+            target = Math.max(0,
+                    target - Math.max(b1.size() / b2.size(), 1));
+        } else {
+            // keep the directory (resident plus ghost blocks) within bounds
+            if (t1.size() + b1.size() >= capacity && !b1.isEmpty()) {
+                removeOldest(b1);
+            } else if (t1.size() + t2.size() + b1.size() + b2.size() >= 2 * capacity
+                    && !b2.isEmpty()) {
+                removeOldest(b2);
+            }
+        }
+
+        Buffer buff = firstUnpinned(free);
+        if (buff != null) {
+            victimQueue = free;
+            free.remove(buff);
+            return buff;
+        }
+        return replace(inB2);
+    }
+
+    public void replaceFailed(Buffer buff) {
+        if (victimQueue == t1) {
+            b1.remove(victimBlock);
+        } else if (victimQueue == t2) {
+            b2.remove(victimBlock);
+        }
+        victimQueue.addFirst(buff);
+    }
+
+    /**
+     * Chooses a victim from T1 or T2, according to the target size of T1,
+     * and remembers its block in the corresponding ghost list.
+     */
+    private Buffer replace(boolean inB2) {
+        boolean fromT1 = t1.size() > 0
+                && (t1.size() > target || (inB2 && t1.size() == target));
+        Buffer buff = fromT1 ? firstUnpinned(t1) : firstUnpinned(t2);
+        if (buff == null) {
+            buff = fromT1 ? firstUnpinned(t2) : firstUnpinned(t1);
+        }
+        if (buff == null) {
+            return null;
+        }
+        victimQueue = buff.queue;
+        victimBlock = buff.block();
+        if (victimQueue == t1) {
+            t1.remove(buff);
+            b1.put(victimBlock, Boolean.TRUE);
+        } else {
+            t2.remove(buff);
+            b2.put(victimBlock, Boolean.TRUE);
+        }
+        return buff;
+    }
+
+    private Buffer firstUnpinned(BufferQueue q) {
+        for (Buffer buff = q.first(); buff != null; buff = q.next(buff)) {
+            if (!buff.isPinned()) {
+                return buff;
+            }
+        }
+        return null;
+    }
+
+    private void removeOldest(Map<Block, Boolean> ghosts) {
+        Iterator<Block> iter = ghosts.keySet().iterator();
+        iter.next();
+        iter.remove();
+    }
+}
@@ -1,7 +1,19 @@
 package simpledb.buffer;
 
-import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import simpledb.file.*;
 
 /*
@@ -30,16 +42,48 @@ solution. It was a harrowing few hours.
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
+ * A basic buffer manager guards its pool with its own lock, so that
+ * {@link BufferMgr} can stripe the buffers of the system over several
+ * independently locked basic buffer managers. Threads that are waiting
+ * for a buffer of this pool are queued in arrival order, and each unpin
+ * wakes up only the thread at the head of the queue.
+ * The choice of which unpinned buffer to replace is delegated to a
+ * {@link ReplacementPolicy}.
+ * <p>
+ * A basic buffer manager that has an {@link IOEngine} does not read the
+ * block of a miss while it holds its lock: {@link #pin(Block)} returns a
+ * buffer whose read may still be pending, and the caller must wait for the
+ * read after releasing the lock.
+ * <p>
+ * Some of the unpinned buffers may be reserved by {@link BufferReservation}s.
+ * A pin that takes an unpinned buffer uses a reservation of the caller if it
+ * has one in this pool, and otherwise only succeeds if an unreserved buffer
+ * is available.
  *
  * @author Edward Sciore
  *
  */
 class BasicBufferMgr {
 
-    private Buffer[] bufferpool;
-    private int numAvailable;
-    private int strategy;
-    private int buffPointer;
+    static final String NAIVE = "naive", FIFO = "fifo", LRU = "lru",
+            CLOCK = "clock", LRU2 = "lru2", TWO_QUEUE = "2q", ARC = "arc";
+    private static final String[] STRATEGIES
+            = {NAIVE, FIFO, LRU, CLOCK, LRU2, TWO_QUEUE, ARC};
+
+    private final int id;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedList<Condition> waiters = new LinkedList<Condition>();
+    private volatile Buffer[] bufferpool;
+    private Map<Block, Buffer> pageTable;
+    private volatile int numAvailable;
+    private volatile int reserved = 0; // the unpinned buffers reserved
+    private ReplacementPolicy policy;
+    private BufferStats stats;
+    private PageArena arena;
+    private DirtyPageTable dirtyPages;
+    private volatile IOEngine io;
+    // blocks being read ahead that have not been pinned since the read began
+    private Set<Block> prefetching = new HashSet<Block>();
 
     /**
      * Creates a buffer manager having the specified number of buffer slots.
@@ -53,30 +97,66 @@ class BasicBufferMgr {
      * @param numbuffs the number of buffer slots to allocate
      */
     BasicBufferMgr(int numbuffs) {
+        this(0, numbuffs, new BufferStats(), new PageArena(numbuffs), null);
+    }
+
+    /**
+     * Creates a buffer manager having the specified number of buffer slots,
+     * which records its activity in the specified statistics. The pages of
+     * the buffers are allocated from the specified arena, and the
+     * modifications made to them are recorded in the specified dirty page
+     * table; both may be shared with other buffer managers.
+     *
+     * @param id the index of this pool among the partitions of the buffers
+     * @param numbuffs the number of buffer slots to allocate
+     * @param stats the statistics to be updated
+     * @param arena the arena holding the pages of the buffers
+     * @param dirtyPages the table of modified buffers, or null
+     */
+    BasicBufferMgr(int id, int numbuffs, BufferStats stats, PageArena arena,
+            DirtyPageTable dirtyPages) {
+        this.id = id;
+        this.stats = stats;
+        this.arena = arena;
+        this.dirtyPages = dirtyPages;
         bufferpool = new Buffer[numbuffs];
+        pageTable = new HashMap<Block, Buffer>(numbuffs * 2);
         numAvailable = numbuffs;
         for (int i = 0; i < numbuffs; i++) {
-            bufferpool[i] = new Buffer();
+            bufferpool[i] = newBuffer(i);
         }
+        setPolicy(NAIVE);
     }
 
     /**
-     * Flushes the dirty buffers modified by the specified transaction.
+     * Returns the buffers whose pages are dirty.
      *
-     * @param txnum the transaction's id number
+     * @return the dirty buffers
      */
-    synchronized void flushAll(int txnum) {
-        for (Buffer buff : bufferpool) {
-            if (buff.isModifiedBy(txnum)) {
-                buff.flush();
+    List<Buffer> dirtyBuffers() {
+        List<Buffer> dirty = new ArrayList<Buffer>();
+        lock.lock();
+        try {
+            for (Buffer buff : bufferpool) {
+                if (buff.isDirty()) {
+                    dirty.add(buff);
+                }
             }
+        } finally {
+            lock.unlock();
         }
+        return dirty;
     }
-    
-    synchronized void definitelyFlushAll() {
-        for (Buffer buff : bufferpool) {
-            buff.flush();
-        }
+
+    /**
+     * Pins a buffer to the specified block, on behalf of a caller that holds
+     * no reservation.
+     *
+     * @param blk a reference to a disk block
+     * @return the pinned buffer
+     */
+    Buffer pin(Block blk) {
+        return pin(blk, null);
     }
 
     /**
@@ -84,65 +164,308 @@ class BasicBufferMgr {
      * assigned to that block then that buffer is used; otherwise, an unpinned
      * buffer from the pool is chosen. Returns a null value if there are no
      * available buffers.
+     * If the pool has an I/O engine, the block of a newly assigned buffer is
+     * read by the engine, and the buffer may be returned before the read is
+     * complete; see {@link Buffer#pendingRead()}.
+     * An unpinned buffer is taken from one of the specified reservations if
+     * they have any in this pool; otherwise the reserved buffers are left
+     * alone.
      *
      * @param blk a reference to a disk block
+     * @param reservations the reservations of the caller, or null
      * @return the pinned buffer
      */
-    synchronized Buffer pin(Block blk) {
-        Buffer buff = findExistingBuffer(blk);
-        if (buff == null) {
-            buff = chooseUnpinnedBuffer();
-            if (buff == null) {
-                return null;
+    Buffer pin(Block blk, List<BufferReservation> reservations) {
+        lock.lock();
+        try {
+            if (!prefetching.isEmpty()) {
+                prefetching.remove(blk);
+            }
+            Buffer buff = findExistingBuffer(blk);
+            boolean hit = (buff != null);
+            if (buff == null || !buff.isPinned()) {
+                BufferReservation res = reservationFor(reservations);
+                if (res == null && numAvailable <= reserved) {
+                    return null;
+                }
+                if (buff == null) {
+                    buff = chooseUnpinnedBuffer(blk);
+                    if (buff == null) {
+                        return null;
+                    }
+                    unmap(buff);
+                    try {
+                        IOEngine engine = io;
+                        if (engine == null) {
+                            buff.assignToBlock(blk);
+                        } else {
+                            engine.execute(buff.assignForRead(blk));
+                        }
+                    } catch (RuntimeException e) {
+                        replaceFailed(buff);
+                        throw e;
+                    }
+                    pageTable.put(blk, buff);
+                    buff.updateTimeAdded();
+                    policy.assigned(buff);
+                }
+                takeUnpinned(buff, res);
             }
-            buff.assignToBlock(blk);
+            buff.pin();
+            policy.pinned(buff);
+            stats.pinned(blk.fileName(), hit);
+            return buff;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        if (!buff.isPinned()) {
-            numAvailable--;
-        }
-        buff.pin();
-        buff.updateTimeAdded();
-        buffPointer = Arrays.asList(bufferpool).indexOf(buff) + 1;
-        return buff;
+    /**
+     * Allocates a new block in the specified file, and pins a buffer to it,
+     * on behalf of a caller that holds no reservation.
+     *
+     * @param filename the name of the file
+     * @param fmtr a pageformatter object, used to format the new block
+     * @return the pinned buffer
+     */
+    Buffer pinNew(String filename, PageFormatter fmtr) {
+        return pinNew(filename, fmtr, null);
     }
 
     /**
      * Allocates a new block in the specified file, and pins a buffer to it.
      * Returns null (without allocating the block) if there are no available
-     * buffers.
+     * buffers. Reserved buffers are used as by {@link #pin(Block, List)}.
      *
      * @param filename the name of the file
      * @param fmtr a pageformatter object, used to format the new block
+     * @param reservations the reservations of the caller, or null
      * @return the pinned buffer
      */
-    synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
-        Buffer buff = chooseUnpinnedBuffer();
-        if (buff == null) {
-            return null;
+    Buffer pinNew(String filename, PageFormatter fmtr,
+            List<BufferReservation> reservations) {
+        lock.lock();
+        try {
+            BufferReservation res = reservationFor(reservations);
+            if (res == null && numAvailable <= reserved) {
+                return null;
+            }
+            Buffer buff = chooseUnpinnedBuffer(null);
+            if (buff == null) {
+                return null;
+            }
+            unmap(buff);
+            try {
+                buff.assignToNew(filename, fmtr);
+            } catch (RuntimeException e) {
+                replaceFailed(buff);
+                throw e;
+            }
+            prefetching.remove(buff.block());
+            pageTable.put(buff.block(), buff);
+            // When a buffer is read in from memory, update its attribute
+            buff.updateTimeAdded();
+            policy.assigned(buff);
+            takeUnpinned(buff, res);
+            buff.pin();
+            policy.pinned(buff);
+            stats.appended(filename);
+            return buff;
+        } finally {
+            lock.unlock();
         }
-        buff.assignToNew(filename, fmtr);
-        numAvailable--;
-        buff.pin();
-        // When a buffer is read in from memory, update its attribute
-        buff.updateTimeAdded();
-        buffPointer = Arrays.asList(bufferpool).indexOf(buff) + 1;
-        return buff;
     }
 
     /**
-     * Unpins the specified buffer.
+     * Unpins the specified buffer. If the buffer's pin count becomes 0, then
+     * the thread that has been waiting longest for a buffer of this pool is
+     * woken up. A buffer that was taken from a reservation that is still held
+     * returns to the reservation, and every waiting thread is woken up, since
+     * only the holder can use it.
      *
      * @param buff the buffer to be unpinned
      */
-    synchronized void unpin(Buffer buff) {
-        buff.unpin();
-        // Each time the buffer is unpinned, its attribute of timeLastAccessed is updated to the current time
-        buff.updateTimeAccessed();
-        if (!buff.isPinned()) {
-            numAvailable++;
-            buffPointer = Arrays.asList(bufferpool).indexOf(buff) + 1;
+    void unpin(Buffer buff) {
+        lock.lock();
+        try {
+            buff.unpin();
+            // Each time the buffer is unpinned, its attribute of timeLastAccessed is updated to the current time
+            buff.updateTimeAccessed();
+            policy.unpinned(buff);
+            if (!buff.isPinned()) {
+                numAvailable++;
+                BufferReservation res = buff.reservation;
+                buff.reservation = null;
+                if (res != null && res.giveBack(id)) {
+                    reserved++;
+                    signalAllWaiters();
+                } else {
+                    signalNextWaiter();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unpins a buffer whose read has failed, and removes it from the page
+     * table, so that the next pin of its block reads the block again.
+     *
+     * @param buff the pinned buffer whose read failed
+     */
+    void discard(Buffer buff) {
+        lock.lock();
+        try {
+            pageTable.remove(buff.block(), buff);
+            unpin(buff);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the engine that reads the blocks of misses. With no engine, a
+     * block is read while the pool's lock is held.
+     *
+     * @param io the I/O engine, or null
+     */
+    void setIOEngine(IOEngine io) {
+        this.io = io;
+    }
+
+    /**
+     * Acquires the lock that guards this pool. A thread holding the lock can
+     * make several calls on the pool, and wait for buffers, atomically.
+     */
+    void lock() {
+        lock.lock();
+    }
+
+    /**
+     * Releases the lock that guards this pool.
+     */
+    void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Waits until a buffer of this pool is unpinned, or until the specified
+     * time has elapsed. The caller must hold the pool's lock. Waiting threads
+     * are queued in arrival order; a thread that is retrying after an earlier
+     * wakeup goes back to the head of the queue.
+     *
+     * @param millis the maximum time to wait, in milliseconds
+     * @param retry true if the caller has already waited for this request
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void awaitUnpin(long millis, boolean retry) throws InterruptedException {
+        Condition cond = lock.newCondition();
+        if (retry) {
+            waiters.addFirst(cond);
+        } else {
+            waiters.addLast(cond);
+        }
+        try {
+            cond.await(millis, TimeUnit.MILLISECONDS);
+        } finally {
+            waiters.remove(cond);
+        }
+    }
+
+    /**
+     * Passes a wakeup on to the next waiting thread, if a buffer is still
+     * available. This is called by a thread that was woken up but did not
+     * use the buffer, so that the wakeup is not lost.
+     * The caller must hold the pool's lock.
+     */
+    void passOnWakeup() {
+        if (numAvailable > reserved) {
+            signalNextWaiter();
+        }
+    }
+
+    private void signalNextWaiter() {
+        Condition cond = waiters.poll();
+        if (cond != null) {
+            cond.signal();
+        }
+    }
+
+    private void signalAllWaiters() {
+        for (Condition cond : waiters) {
+            cond.signal();
+        }
+        waiters.clear();
+    }
+
+    /**
+     * Adds up to the specified number of unreserved unpinned buffers of this
+     * pool to the reservation.
+     *
+     * @param res the reservation
+     * @param max the largest number of buffers to add
+     * @return the number of buffers added
+     */
+    int reserve(BufferReservation res, int max) {
+        lock.lock();
+        try {
+            int count = Math.max(0, Math.min(max, numAvailable - reserved));
+            res.add(id, count);
+            reserved += count;
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the unused buffers of a released reservation to this pool,
+     * and wakes up the waiting threads.
+     *
+     * @param res the released reservation
+     */
+    void release(BufferReservation res) {
+        lock.lock();
+        try {
+            int count = res.clear(id);
+            if (count > 0) {
+                reserved -= count;
+                signalAllWaiters();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of unpinned buffers that are not reserved.
+     *
+     * @return the number of buffers that can be reserved
+     */
+    int reservable() {
+        return Math.max(0, numAvailable - reserved);
+    }
+
+    private BufferReservation reservationFor(List<BufferReservation> reservations) {
+        if (reservations != null) {
+            for (BufferReservation res : reservations) {
+                if (res.hasQuota(id)) {
+                    return res;
+                }
+            }
         }
+        return null;
+    }
+
+    // the buffer goes from unpinned to pinned
+    private void takeUnpinned(Buffer buff, BufferReservation res) {
+        if (res != null) {
+            res.take(id);
+            reserved--;
+        }
+        buff.reservation = res;
+        numAvailable--;
     }
 
     /**
@@ -154,31 +477,210 @@ class BasicBufferMgr {
         return numAvailable;
     }
 
-    private Buffer findExistingBuffer(Block blk) {
-        for (Buffer buff : bufferpool) {
-            Block b = buff.block();
-            if (b != null && b.equals(blk)) {
-                return buff;
+    /**
+     * Returns the dirty unpinned buffers that should be written so that at
+     * least the specified fraction of the unpinned buffers is clean. The
+     * buffers that were unpinned longest ago, and are therefore closest to
+     * being replaced, are chosen first. The buffers are not written here, so
+     * that the caller can write them without holding the pool's lock.
+     *
+     * @param cleanFraction the desired fraction of clean unpinned buffers
+     * @return the buffers to be written
+     */
+    List<Buffer> buffersToClean(double cleanFraction) {
+        List<Buffer> dirty = new ArrayList<Buffer>();
+        int unpinned = 0;
+        lock.lock();
+        try {
+            for (Buffer buff : bufferpool) {
+                if (!buff.isPinned()) {
+                    unpinned++;
+                    if (buff.isDirty()) {
+                        dirty.add(buff);
+                    }
+                }
+            }
+            int wanted = (int) Math.ceil(cleanFraction * unpinned);
+            int excess = dirty.size() - (unpinned - wanted);
+            if (excess <= 0) {
+                return Collections.emptyList();
             }
+            Collections.sort(dirty, new Comparator<Buffer>() {
+                public int compare(Buffer b1, Buffer b2) {
+                    return FIFOPolicy.compareTimes(b1.getTimeAccessed(),
+                            b2.getTimeAccessed(), b1, b2);
+                }
+            });
+            return new ArrayList<Buffer>(dirty.subList(0, excess));
+        } finally {
+            lock.unlock();
         }
-        return null;
     }
 
-    private Buffer chooseUnpinnedBuffer() {
-        switch (this.strategy) {
-            case 0:
-                return useNaiveStrategy();
-            case 1:
-                return useFIFOStrategy();
-            case 2:
-                return useLRUStrategy();
-            case 3:
-                return useClockStrategy();
-            default:
-                return null;
+    /**
+     * Notes that the specified block is about to be read ahead, unless it is
+     * already in the pool. A block that is pinned before the read ahead
+     * completes is no longer placed in the pool by
+     * {@link #prefetch(Block, Page)}, since it may have been modified,
+     * written and evicted meanwhile, and the page read ahead would then be
+     * out of date.
+     *
+     * @param blk a reference to a disk block
+     * @return false if the block is already in the pool
+     */
+    boolean startPrefetch(Block blk) {
+        lock.lock();
+        try {
+            if (pageTable.containsKey(blk)) {
+                return false;
+            }
+            prefetching.add(blk);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets a block whose read ahead has failed.
+     *
+     * @param blk a reference to a disk block
+     */
+    void cancelPrefetch(Block blk) {
+        lock.lock();
+        try {
+            prefetching.remove(blk);
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Places the specified block into an unpinned buffer, without pinning it,
+     * in anticipation of a later pin. The block has already been read into
+     * the specified page, typically along with its neighbors by a single
+     * multi-block read, and is copied from it. Nothing is done if the block
+     * has been pinned since {@link #startPrefetch(Block)} was called, or if
+     * no buffer can be spared: a buffer is only taken when another would
+     * remain available and no thread is waiting.
+     * The replacement policy is told that the buffer was assigned and is
+     * unpinned, but not that it was pinned, so the read does not count as a
+     * reference to the block.
+     *
+     * @param blk a reference to a disk block
+     * @param p a page holding the contents of the block
+     */
+    void prefetch(Block blk, Page p) {
+        lock.lock();
+        try {
+            if (!prefetching.remove(blk) || pageTable.containsKey(blk)
+                    || numAvailable < 2 || !waiters.isEmpty()) {
+                return;
+            }
+            Buffer buff = chooseUnpinnedBuffer(blk);
+            if (buff == null) {
+                return;
+            }
+            unmap(buff);
+            try {
+                buff.assignToBlock(blk, p);
+            } catch (RuntimeException e) {
+                replaceFailed(buff);
+                throw e;
+            }
+            pageTable.put(blk, buff);
+            buff.updateTimeAdded();
+            policy.assigned(buff);
+            buff.updateTimeAccessed();
+            policy.unpinned(buff);
+            stats.readAhead(blk.fileName());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the specified block is currently assigned to a buffer
+     * of this pool.
+     *
+     * @param blk a reference to a disk block
+     * @return true if the block is in the pool
+     */
+    boolean isResident(Block blk) {
+        lock.lock();
+        try {
+            return findExistingBuffer(blk) != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the page table, which maps each block in the pool to
+     * its buffer.
+     *
+     * @return the blocks in the pool and their buffers
+     */
+    Map<Block, Buffer> pageTable() {
+        lock.lock();
+        try {
+            return new HashMap<Block, Buffer>(pageTable);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the buffer assigned to the specified block, or null if the block
+     * is not in the pool. The lookup goes through the page table, and so takes
+     * constant time regardless of the size of the pool.
+     */
+    private Buffer findExistingBuffer(Block blk) {
+        return pageTable.get(blk);
+    }
+
+    /**
+     * Creates an empty buffer whose page is allocated from the arena.
+     */
+    private Buffer newBuffer(int index) {
+        Buffer buff = new Buffer(index, arena.allocate());
+        buff.dirtyPages = dirtyPages;
+        return buff;
+    }
+
+    /**
+     * Removes the page table entry for the block currently held by the
+     * specified buffer, prior to the buffer being reassigned.
+     */
+    private void unmap(Buffer buff) {
+        Block b = buff.block();
+        // a discarded buffer is no longer in the page table
+        if (b != null && pageTable.remove(b, buff)) {
+            stats.evicted(b.fileName(), buff.isDirty());
+        }
+    }
+
+    private Buffer chooseUnpinnedBuffer(Block blk) {
+        if (numAvailable == 0) {
+            return null;
+        }
+        return policy.chooseUnpinnedBuffer(blk);
+    }
+
+    /**
+     * Returns a buffer chosen for replacement that could not be reassigned
+     * to the replacement policy. A buffer that is still dirty failed to write
+     * its old block, which it still holds, and so goes back in the page table;
+     * the page of any other such buffer no longer matches its block, which is
+     * left out of the table, as that of a discarded buffer is.
+     */
+    private void replaceFailed(Buffer buff) {
+        if (buff.isDirty()) {
+            pageTable.put(buff.block(), buff);
+        }
+        policy.replaceFailed(buff);
+    }
+
     /**
      * @return Allocated buffers
      */
@@ -189,116 +691,133 @@ class BasicBufferMgr {
     /**
      * Set buffer selection strategy
      *
-     * @param s (0 - Naive, 1 - FIFO, 2 - LRU, 3 - Clock)
+     * @param s (0 - Naive, 1 - FIFO, 2 - LRU, 3 - Clock, 4 - LRU-2, 5 - 2Q,
+     * 6 - ARC)
      */
     public void setStrategy(int s) {
-        this.strategy = s;
+        if (s < 0 || s >= STRATEGIES.length) {
+            throw new IllegalArgumentException("unknown buffer strategy " + s);
+        }
+        setPolicy(STRATEGIES[s]);
     }
 
     /**
-     * Naive buffer selection strategy
+     * Sets the buffer replacement policy by name. The new policy takes over
+     * the current contents of the pool.
      *
-     * @return
+     * @param name one of "naive", "fifo", "lru", "clock", "lru2", "2q" or
+     * "arc"
      */
-    private Buffer useNaiveStrategy() {
-        for (Buffer buff : bufferpool) {
-            if (!buff.isPinned()) {
-                return buff;
-            }
+    void setPolicy(String name) {
+        ReplacementPolicy p = newPolicy(name);
+        lock.lock();
+        try {
+            p.reset(bufferpool);
+            policy = p;
+        } finally {
+            lock.unlock();
         }
-        return null;
     }
 
     /**
-     * FIFO buffer selection strategy
+     * Changes the number of buffers in this pool. When the pool grows, the
+     * new buffers are empty and available. When the pool shrinks, only
+     * unpinned buffers can be removed; empty buffers are removed first, then
+     * clean buffers, then those unpinned longest ago, and dirty buffers are
+     * written before they are removed. As many unpinned buffers as are
+     * reserved are kept. If too few buffers can be removed, the
+     * pool shrinks as far as it can. The replacement policy is reset to the
+     * new pool.
      *
-     * @return
+     * @param numbuffs the desired number of buffers, at least 1
+     * @return the number of buffers in the pool after the change
      */
-    private Buffer useFIFOStrategy() {
-        long min = 1000000000000000L;
-        Buffer leastRecentlyAddedBuffer = null;
-        for (Buffer buff : bufferpool) {
-            // if the buffer is pinned, ignore
-            if (!buff.isPinned()) {
-                // the first time around, this will be null
-                if (leastRecentlyAddedBuffer == null) {
-                    leastRecentlyAddedBuffer = buff;
+    int resize(int numbuffs) {
+        lock.lock();
+        try {
+            int oldsize = bufferpool.length;
+            if (numbuffs > oldsize) {
+                Buffer[] pool = Arrays.copyOf(bufferpool, numbuffs);
+                for (int i = oldsize; i < numbuffs; i++) {
+                    pool[i] = newBuffer(i);
                 }
-                // if the buffer had a time in
-                if (buff.getTimeAdded() != 0) {
-                    // compare its time in to the min value for time in
-                    if (min - buff.getTimeAdded() > 0) {
-                        // set the min to the new, smaller value and update buffer
-                        min = buff.getTimeAdded();
-                        leastRecentlyAddedBuffer = buff;
+                numAvailable += numbuffs - oldsize;
+                bufferpool = pool;
+                policy.reset(pool);
+                signalNextWaiter();
+            } else if (numbuffs < oldsize) {
+                List<Buffer> candidates = new ArrayList<Buffer>();
+                for (Buffer buff : bufferpool) {
+                    if (!buff.isPinned()) {
+                        candidates.add(buff);
                     }
                 }
-            }
-        }
-        // this will be null if there are no unpinned buffers
-        return leastRecentlyAddedBuffer;
-    }
-
-    /**
-     * LRU buffer selection strategy
-     *
-     * @return
-     */
-    private Buffer useLRUStrategy() {
-        long min = 1000000000000000L;
-        Buffer leastRecentlyAccessedBuffer = null;
-        for (Buffer buff : bufferpool) {
-            // if the buffer is pinned, ignore
-            if (!buff.isPinned()) {
-                // the first time around, this will be null
-                if (leastRecentlyAccessedBuffer == null) {
-                    leastRecentlyAccessedBuffer = buff;
+                Collections.sort(candidates, new Comparator<Buffer>() {
+                    public int compare(Buffer b1, Buffer b2) {
+                        if ((b1.block() == null) != (b2.block() == null)) {
+                            return (b1.block() == null) ? -1 : 1;
+                        }
+                        if (b1.isDirty() != b2.isDirty()) {
+                            return b1.isDirty() ? 1 : -1;
+                        }
+                        return FIFOPolicy.compareTimes(b1.getTimeAccessed(),
+                                b2.getTimeAccessed(), b1, b2);
+                    }
+                });
+                // the reserved buffers stay in the pool
+                int count = Math.min(oldsize - numbuffs,
+                        candidates.size() - reserved);
+                Set<Buffer> removed = Collections.newSetFromMap(
+                        new IdentityHashMap<Buffer, Boolean>());
+                for (Buffer buff : candidates.subList(0, count)) {
+                    buff.flush();
+                    unmap(buff);
+                    buff.setIndex(-1);
+                    arena.release(buff.page());
+                    removed.add(buff);
                 }
-                // if the buffer had a time out
-                if (buff.getTimeAccessed() != 0) {
-                    // compare its time in to the min value for time out
-                    if (min - buff.getTimeAccessed() > 0) {
-                        // set the min to the new, smaller value and update buffer
-                        min = buff.getTimeAccessed();
-                        leastRecentlyAccessedBuffer = buff;
+                Buffer[] pool = new Buffer[oldsize - count];
+                int i = 0;
+                for (Buffer buff : bufferpool) {
+                    if (!removed.contains(buff)) {
+                        buff.setIndex(i);
+                        pool[i++] = buff;
                     }
                 }
+                numAvailable -= count;
+                bufferpool = pool;
+                policy.reset(pool);
             }
+            return bufferpool.length;
+        } finally {
+            lock.unlock();
         }
-        return leastRecentlyAccessedBuffer;
     }
 
     /**
-     * Clock buffer selection strategy
+     * Creates the replacement policy having the specified name.
      *
-     * @return
-     */
- 
-    // I would like to dedicate this code to Alex Davis. May he never get a parking ticket.
-    
-    private Buffer useClockStrategy() {
-        // make a new thing to iterate over
-        Buffer[] newPool = new Buffer[bufferpool.length];
-        
-        // add everything after the pointer from bufferpool to the new pool
-        int index = 0;
-        for (int i = buffPointer; i < bufferpool.length; i++) {
-            newPool[index] = bufferpool[i];
-            index++;
-        }
-        
-        // add everything before the pointer from bufferpool to the new pool
-        for (int i = 0; i < buffPointer; i++) {
-            newPool[index] = bufferpool[i];
-            index++;
-        }
-        
-        // use naive and iterate over the newly constructed pool
-        for (Buffer buff : newPool) {
-            if (!buff.isPinned()) {
-                return buff;
-            }
+     * @param name the name of the policy
+     * @return a new, uninitialized policy
+     */
+    static ReplacementPolicy newPolicy(String name) {
+        String n = name.toLowerCase();
+        if (n.equals(NAIVE)) {
+            return new NaivePolicy();
+        } else if (n.equals(FIFO)) {
+            return new FIFOPolicy();
+        } else if (n.equals(LRU)) {
+            return new LRUPolicy();
+        } else if (n.equals(CLOCK)) {
+            return new ClockPolicy();
+        } else if (n.equals(LRU2)) {
+            return new LRUKPolicy();
+        } else if (n.equals(TWO_QUEUE)) {
+            return new TwoQueuePolicy();
+        } else if (n.equals(ARC)) {
+            return new ARCPolicy();
+        } else {
+            throw new IllegalArgumentException("unknown buffer policy " + name);
         }
-        return null;
     }
 }
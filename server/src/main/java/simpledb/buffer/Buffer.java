@@ -1,7 +1,13 @@
 package simpledb.buffer;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 import simpledb.file.*;
 import simpledb.server.SimpleDB;
 
@@ -16,13 +22,37 @@ import simpledb.server.SimpleDB;
  */
 public class Buffer {
 
-    private Page contents = new Page();
+    private static final AtomicLong serials = new AtomicLong();
+
+    // the order in which runs of buffers are locked
+    private static final Comparator<Buffer> LOCK_ORDER = new Comparator<Buffer>() {
+        public int compare(Buffer b1, Buffer b2) {
+            return (b1.serial < b2.serial) ? -1 : ((b1.serial == b2.serial) ? 0 : 1);
+        }
+    };
+
+    private final long serial = serials.getAndIncrement();
+    private Page contents;
+    private int index = -1; // negative means not part of a buffer pool
     private Block blk = null;
     private int pins = 0;
     private int modifiedBy = -1;  // negative means not modified
-    private int logSequenceNumber = -1; // negative means no corresponding log record
+    private long logSequenceNumber = -1; // negative means no corresponding log record
     private long timeLastAdded = 0;
     private long timeLastAccessed = 0;
+    // the read filling the page; null once the page holds its block
+    private volatile FutureTask<Void> pendingRead = null;
+
+    // links used by the BufferQueue that currently holds this buffer
+    BufferQueue queue;
+    Buffer qprev, qnext;
+
+    // the table that records which transactions have modified this buffer
+    DirtyPageTable dirtyPages;
+
+    // the reservation that the buffer was taken from while it is pinned,
+    // guarded by the lock of its pool
+    BufferReservation reservation;
 
     /**
      * Creates a new buffer, wrapping a new {@link simpledb.file.Page page}.
@@ -35,6 +65,21 @@ public class Buffer {
      * first.
      */
     public Buffer() {
+        contents = new Page();
+    }
+
+    /**
+     * Creates a new buffer occupying the specified slot of the buffer pool,
+     * and wrapping the specified page. The slot index lets the buffer manager
+     * locate the buffer in its pool without having to search for it.
+     *
+     * @param index the position of the buffer in the buffer pool
+     * @param page the page, usually allocated from a
+     * {@link simpledb.file.PageArena PageArena}
+     */
+    Buffer(int index, Page page) {
+        this.index = index;
+        this.contents = page;
     }
 
     /**
@@ -61,6 +106,18 @@ public class Buffer {
         return contents.getString(offset);
     }
 
+    /**
+     * Returns true if the string at the specified offset of the buffer's page
+     * equals the specified string, without decoding the string on the page.
+     *
+     * @param offset the byte offset of the page
+     * @param encoded the string, as encoded by {@link Page#encode(String)}
+     * @return true if the strings are equal
+     */
+    public boolean stringEquals(int offset, byte[] encoded) {
+        return contents.stringEquals(offset, encoded);
+    }
+
     /**
      * Writes an integer to the specified offset of the buffer's page. This
      * method assumes that the transaction has already written an appropriate
@@ -73,7 +130,10 @@ public class Buffer {
      * @param txnum the id of the transaction performing the modification
      * @param lsn the LSN of the corresponding log record
      */
-    public void setInt(int offset, int val, int txnum, int lsn) {
+    public synchronized void setInt(int offset, int val, int txnum, long lsn) {
+        if (modifiedBy != txnum && dirtyPages != null) {
+            dirtyPages.dirtied(txnum, this);
+        }
         modifiedBy = txnum;
         if (lsn >= 0) {
             logSequenceNumber = lsn;
@@ -93,7 +153,10 @@ public class Buffer {
      * @param txnum the id of the transaction performing the modification
      * @param lsn the LSN of the corresponding log record
      */
-    public void setString(int offset, String val, int txnum, int lsn) {
+    public synchronized void setString(int offset, String val, int txnum, long lsn) {
+        if (modifiedBy != txnum && dirtyPages != null) {
+            dirtyPages.dirtied(txnum, this);
+        }
         modifiedBy = txnum;
         if (lsn >= 0) {
             logSequenceNumber = lsn;
@@ -123,6 +186,34 @@ public class Buffer {
         return this.timeLastAccessed;
     }
 
+    /**
+     * Returns the position of this buffer in the buffer pool.
+     *
+     * @return the slot index of the buffer, or -1 if it is not pooled
+     */
+    int index() {
+        return index;
+    }
+
+    /**
+     * Moves this buffer to the specified position of the buffer pool. This
+     * happens when the pool shrinks.
+     *
+     * @param index the new slot index of the buffer
+     */
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Returns the page wrapped by this buffer.
+     *
+     * @return the buffer's page
+     */
+    Page page() {
+        return contents;
+    }
+
     /**
      * Returns a reference to the disk block that the buffer is pinned to.
      *
@@ -136,8 +227,12 @@ public class Buffer {
      * Writes the page to its disk block if the page is dirty. The method
      * ensures that the corresponding log record has been written to disk prior
      * to writing the page to disk.
+     * The method is synchronized with the methods that modify the buffer, so
+     * that a modification made while the page is being written is not lost;
+     * this allows the page cleaner to flush a buffer without holding the
+     * buffer manager's lock.
      */
-    void flush() {
+    synchronized void flush() {
         if (modifiedBy >= 0) {
             SimpleDB.logMgr().flush(logSequenceNumber);
             contents.write(blk);
@@ -170,14 +265,84 @@ public class Buffer {
     }
 
     /**
-     * Returns true if the buffer is dirty due to a modification by the
-     * specified transaction.
+     * Writes the pages of the specified buffers, which hold consecutive
+     * blocks of a file, with as few gathering writes as possible. A buffer is
+     * written if it was last modified by the specified transaction, or if it
+     * is dirty at all when txnum is negative. The caller sorts the buffers by
+     * block without locking them, so a buffer may be reassigned meanwhile, and
+     * two concurrent flushes could then see the same buffers in opposite
+     * orders. The buffers are therefore locked in the order in which they were
+     * created, and then checked again: a buffer that has been reassigned or is
+     * no longer dirty splits the run. The log is forced once, up to the
+     * largest LSN of the run.
      *
-     * @param txnum the id of the transaction
-     * @return true if the transaction modified the buffer
+     * @param run the buffers, sorted by block
+     * @param txnum the id of the transaction, or -1 for any transaction
      */
-    boolean isModifiedBy(int txnum) {
-        return txnum == modifiedBy;
+    static void flush(List<Buffer> run, int txnum) {
+        List<Buffer> locking = new ArrayList<Buffer>(run);
+        Collections.sort(locking, LOCK_ORDER);
+        flush(run, locking, 0, txnum);
+    }
+
+    private static void flush(List<Buffer> run, List<Buffer> locking, int i, int txnum) {
+        if (i < locking.size()) {
+            synchronized (locking.get(i)) {
+                flush(run, locking, i + 1, txnum);
+            }
+            return;
+        }
+        // every buffer of the run is now locked
+        List<Buffer> consecutive = new ArrayList<Buffer>();
+        for (Buffer buff : run) {
+            boolean dirty = (txnum < 0) ? buff.modifiedBy >= 0 : buff.modifiedBy == txnum;
+            if (!consecutive.isEmpty() && !(dirty && follows(consecutive, buff))) {
+                writeRun(consecutive);
+                consecutive.clear();
+            }
+            if (dirty) {
+                consecutive.add(buff);
+            }
+        }
+        if (!consecutive.isEmpty()) {
+            writeRun(consecutive);
+        }
+    }
+
+    private static boolean follows(List<Buffer> consecutive, Buffer buff) {
+        Block last = consecutive.get(consecutive.size() - 1).blk;
+        return buff.blk != null && buff.blk.fileName().equals(last.fileName())
+                && buff.blk.number() == last.number() + 1;
+    }
+
+    // the caller holds the locks of the buffers
+    private static void writeRun(List<Buffer> consecutive) {
+        if (consecutive.size() == 1) {
+            consecutive.get(0).flush();
+            return;
+        }
+        long lsn = -1;
+        Page[] pages = new Page[consecutive.size()];
+        for (int i = 0; i < pages.length; i++) {
+            Buffer buff = consecutive.get(i);
+            lsn = Math.max(lsn, buff.logSequenceNumber);
+            pages[i] = buff.contents;
+        }
+        SimpleDB.logMgr().flush(lsn);
+        Page.writeBlocks(consecutive.get(0).blk, pages);
+        for (Buffer buff : consecutive) {
+            buff.modifiedBy = -1;
+        }
+    }
+
+    /**
+     * Returns true if the buffer's page has been modified since it was last
+     * written to disk.
+     *
+     * @return true if the buffer is dirty
+     */
+    synchronized boolean isDirty() {
+        return modifiedBy >= 0;
     }
 
     /**
@@ -187,11 +352,80 @@ public class Buffer {
      *
      * @param b a reference to the data block
      */
-    void assignToBlock(Block b) {
+    synchronized void assignToBlock(Block b) {
         flush();
         blk = b;
         contents.read(blk);
         pins = 0;
+        pendingRead = null;
+    }
+
+    /**
+     * Assigns the buffer to the specified block, but leaves the reading of
+     * the block to the returned task, so that the read can be performed
+     * without holding the buffer manager's lock. Until the task completes,
+     * {@link #pendingRead()} returns it, and threads that pin the buffer must
+     * wait for it. If the buffer was dirty, then the contents of the previous
+     * page are first written to disk, before the method returns.
+     *
+     * @param b a reference to the data block
+     * @return the task that reads the block into the page
+     */
+    synchronized FutureTask<Void> assignForRead(final Block b) {
+        flush();
+        blk = b;
+        pins = 0;
+        pendingRead = new FutureTask<Void>(new Runnable() {
+            public void run() {
+                contents.read(b);
+            }
+        }, null) {
+            protected void done() {
+                readDone(this);
+            }
+        };
+        return pendingRead;
+    }
+
+    /**
+     * Returns the read that is filling the buffer's page, or null if the page
+     * already holds the contents of its block. A failed read remains pending,
+     * so that every thread waiting for it sees the failure.
+     *
+     * @return the pending read, or null
+     */
+    FutureTask<Void> pendingRead() {
+        return pendingRead;
+    }
+
+    private synchronized void readDone(FutureTask<Void> read) {
+        boolean failed = false;
+        try {
+            read.get();
+        } catch (Exception e) {
+            failed = true;
+        }
+        // the buffer may already have been reassigned
+        if (pendingRead == read && !failed) {
+            pendingRead = null;
+        }
+    }
+
+    /**
+     * Assigns the buffer to the specified block, whose contents have already
+     * been read into the specified page, as by a multi-block read. If the
+     * buffer was dirty, then the contents of the previous page are first
+     * written to disk.
+     *
+     * @param b a reference to the data block
+     * @param p a page holding the contents of the block
+     */
+    synchronized void assignToBlock(Block b, Page p) {
+        flush();
+        blk = b;
+        contents.copyFrom(p);
+        pins = 0;
+        pendingRead = null;
     }
 
     /**
@@ -202,10 +436,11 @@ public class Buffer {
      * @param filename the name of the file
      * @param fmtr a page formatter, used to initialize the page
      */
-    void assignToNew(String filename, PageFormatter fmtr) {
+    synchronized void assignToNew(String filename, PageFormatter fmtr) {
         flush();
         fmtr.format(contents);
         blk = contents.append(filename);
         pins = 0;
+        pendingRead = null;
     }
 }
@@ -1,23 +1,55 @@
 package simpledb.buffer;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import simpledb.file.*;
+import simpledb.server.SimpleDB;
 
 /**
- * The publicly-accessible buffer manager. A buffer manager wraps a basic buffer
- * manager, and provides the same methods. The difference is that the methods
- * {@link #pin(Block) pin} and {@link #pinNew(String, PageFormatter) pinNew}
- * will never return null. If no buffers are currently available, then the
- * calling thread will be placed on a waiting list. The waiting threads are
- * removed from the list when a buffer becomes available. If a thread has been
- * waiting for a buffer for an excessive amount of time (currently, 10 seconds)
- * then a {@link BufferAbortException} is thrown.
+ * The publicly-accessible buffer manager. A buffer manager wraps one or more
+ * basic buffer managers, and provides the same methods. The difference is that
+ * the methods {@link #pin(Block) pin} and
+ * {@link #pinNew(String, PageFormatter) pinNew} will never return null. If no
+ * buffers are currently available, then the calling thread will be placed on
+ * a waiting list. The waiting threads are removed from the list, one at a
+ * time, when a buffer becomes available. If a thread has been waiting for a
+ * buffer for an excessive amount of time (currently, 10 seconds) then a
+ * {@link BufferAbortException} is thrown.
+ * <p>
+ * The buffers may be split into several partitions, each of which is a basic
+ * buffer manager with its own lock, replacement state and waiting list. A
+ * block always lives in the partition selected by its hash code, so threads
+ * that access different blocks rarely contend for the same lock.
  *
  * @author Edward Sciore
  */
-public class BufferMgr {
+public class BufferMgr implements BufferMgrMBean {
 
     private static final long MAX_TIME = 10000; // 10 seconds
-    private BasicBufferMgr bufferMgr;
+    private static final int MAX_RUN = 32; // blocks per multi-block write
+    private BasicBufferMgr[] partitions;
+    private ConcurrentMap<String, Object> appendLocks
+            = new ConcurrentHashMap<String, Object>();
+    private PageCleaner cleaner;
+    private volatile ReadAhead readAhead;
+    private volatile IOEngine io;
+    private BufferStats stats = new BufferStats();
+    private PageArena arena;
+    private DirtyPageTable dirtyPages = new DirtyPageTable();
+    private int reserved = 0; // the size of the reservations held
+    private volatile int waitingReservers = 0;
 
     /**
      * Creates a new buffer manager having the specified number of buffers. This
@@ -31,31 +63,110 @@ public class BufferMgr {
      * @param numbuffers the number of buffer slots to allocate
      */
     public BufferMgr(int numbuffers) {
-        bufferMgr = new BasicBufferMgr(numbuffers);
+        this(numbuffers, 1);
+    }
+
+    /**
+     * Creates a new buffer manager having the specified number of buffers,
+     * divided as evenly as possible among the specified number of partitions.
+     * This constructor has the same dependencies as
+     * {@link #BufferMgr(int)}.
+     *
+     * @param numbuffers the number of buffer slots to allocate
+     * @param numpartitions the number of independently locked partitions
+     */
+    public BufferMgr(int numbuffers, int numpartitions) {
+        if (numpartitions < 1 || numpartitions > numbuffers) {
+            throw new IllegalArgumentException("cannot split " + numbuffers
+                    + " buffers into " + numpartitions + " partitions");
+        }
+        partitions = new BasicBufferMgr[numpartitions];
+        arena = new PageArena(numbuffers);
+        for (int i = 0; i < numpartitions; i++) {
+            partitions[i] = new BasicBufferMgr(i, partitionSize(numbuffers, i),
+                    stats, arena, dirtyPages);
+        }
+        setIOThreads(0);
     }
 
     /**
      * Pins a buffer to the specified block, potentially waiting until a buffer
      * becomes available. If no buffer becomes available within a fixed time
      * period, then a {@link BufferAbortException} is thrown.
+     * <p>
+     * If the block has to be read, the read is performed by the I/O engine
+     * after the partition's lock is released, and the method waits for it.
+     * A thread that pins the block while it is being read waits for the same
+     * read rather than reading the block again. An interrupt does not end
+     * the wait for the read, since the buffer could otherwise be reassigned
+     * while the read is still filling its page.
+     *
+     * @param blk a reference to a disk block
+     * @return the buffer pinned to that block
+     */
+    public Buffer pin(Block blk) {
+        return pin(blk, null);
+    }
+
+    /**
+     * Pins a buffer to the specified block on behalf of the holder of the
+     * specified reservations, as by {@link #pin(Block)}. If an unpinned
+     * buffer has to be taken, it is taken from one of the reservations if
+     * they have any in the block's partition; other pins leave the reserved
+     * buffers alone.
      *
      * @param blk a reference to a disk block
+     * @param reservations the reservations of the caller, or null
      * @return the buffer pinned to that block
      */
-    public synchronized Buffer pin(Block blk) {
+    public Buffer pin(Block blk, List<BufferReservation> reservations) {
+        ReadAhead ra = readAhead;
+        if (ra != null) {
+            ra.accessed(blk);
+        }
+        BasicBufferMgr part = partitionFor(blk);
+        Buffer buff = pinBuffer(part, blk, reservations);
+        FutureTask<Void> read = buff.pendingRead();
+        if (read != null) {
+            try {
+                io.await(read);
+            } catch (RuntimeException e) {
+                // the read has failed, so its page is no longer written
+                part.discard(buff);
+                unpinned();
+                throw e;
+            }
+        }
+        return buff;
+    }
+
+    private Buffer pinBuffer(BasicBufferMgr part, Block blk,
+            List<BufferReservation> reservations) {
+        part.lock();
         try {
             long timestamp = System.currentTimeMillis();
-            Buffer buff = bufferMgr.pin(blk);
+            Buffer buff = part.pin(blk, reservations);
+            boolean waited = false;
             while (buff == null && !waitingTooLong(timestamp)) {
-                wait(MAX_TIME);
-                buff = bufferMgr.pin(blk);
+                part.awaitUnpin(MAX_TIME, waited);
+                waited = true;
+                buff = part.pin(blk, reservations);
+            }
+            if (waited) {
+                part.passOnWakeup();
+                stats.waited(System.currentTimeMillis() - timestamp);
             }
             if (buff == null) {
+                stats.aborted();
                 throw new BufferAbortException();
             }
             return buff;
         } catch (InterruptedException e) {
+            part.passOnWakeup();
+            stats.aborted();
             throw new BufferAbortException();
+        } finally {
+            part.unlock();
         }
     }
 
@@ -63,55 +174,243 @@ public class BufferMgr {
      * Pins a buffer to a new block in the specified file, potentially waiting
      * until a buffer becomes available. If no buffer becomes available within a
      * fixed time period, then a {@link BufferAbortException} is thrown.
+     * <p>
+     * When the buffers are partitioned, the new block must be placed in the
+     * partition that its block number hashes to. Appends to a file through
+     * the buffer manager are therefore serialized, so that the number of the
+     * new block can be predicted before the block is created. The prediction
+     * fails if the file is appended to in some other way meanwhile; the
+     * buffer is then given up, and the new block is pinned through its own
+     * partition, which reads it back from disk.
      *
      * @param filename the name of the file
      * @param fmtr the formatter used to initialize the page
      * @return the buffer pinned to that block
      */
-    public synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
-        try {
-            long timestamp = System.currentTimeMillis();
-            Buffer buff = bufferMgr.pinNew(filename, fmtr);
-            while (buff == null && !waitingTooLong(timestamp)) {
-                wait(MAX_TIME);
-                buff = bufferMgr.pinNew(filename, fmtr);
-            }
-            if (buff == null) {
-                throw new BufferAbortException();
+    public Buffer pinNew(String filename, PageFormatter fmtr) {
+        return pinNew(filename, fmtr, null);
+    }
+
+    /**
+     * Pins a buffer to a new block in the specified file on behalf of the
+     * holder of the specified reservations, as by
+     * {@link #pinNew(String, PageFormatter)}. The buffer is taken from the
+     * reservations as by {@link #pin(Block, List)}.
+     *
+     * @param filename the name of the file
+     * @param fmtr the formatter used to initialize the page
+     * @param reservations the reservations of the caller, or null
+     * @return the buffer pinned to that block
+     */
+    public Buffer pinNew(String filename, PageFormatter fmtr,
+            List<BufferReservation> reservations) {
+        if (partitions.length == 1) {
+            return pinNew(partitions[0], filename, fmtr, reservations);
+        }
+        synchronized (appendLock(filename)) {
+            int blknum = SimpleDB.fileMgr().size(filename);
+            BasicBufferMgr part = partitionFor(new Block(filename, blknum));
+            Buffer buff = pinNew(part, filename, fmtr, reservations);
+            Block blk = buff.block();
+            if (partitionFor(blk) == part) {
+                return buff;
             }
-            return buff;
-        } catch (InterruptedException e) {
-            throw new BufferAbortException();
+            // another appender took the predicted block
+            part.discard(buff);
+            unpinned();
+            return pin(blk, reservations);
         }
     }
 
     /**
      * Unpins the specified buffer. If the buffer's pin count becomes 0, then
-     * the threads on the wait list are notified.
+     * the thread that has waited longest for a buffer in the same partition is
+     * notified, and so are the threads waiting to reserve buffers.
      *
      * @param buff the buffer to be unpinned
      */
-    public synchronized void unpin(Buffer buff) {
-        bufferMgr.unpin(buff);
-        if (!buff.isPinned()) {
-            notifyAll();
-        }
+    public void unpin(Buffer buff) {
+        partitionFor(buff.block()).unpin(buff);
+        unpinned();
     }
 
     /**
-     * Flushes the dirty buffers modified by the specified transaction.
+     * Flushes the dirty buffers modified by the specified transaction. Only
+     * the buffers that the transaction has modified are examined, so the cost
+     * does not depend on the size of the pool. The pages are written in file
+     * and block order, and consecutive blocks are written together.
      *
      * @param txnum the transaction's id number
      */
     public void flushAll(int txnum) {
-        bufferMgr.flushAll(txnum);
+        List<Buffer> buffs = dirtyPages.remove(txnum);
+        sortByBlock(buffs);
+        writeInOrder(buffs, txnum);
     }
-    
+
     /**
-     * Flushes all buffers no matter the cost.
+     * Flushes all buffers no matter the cost. The pages are written in file
+     * and block order, and consecutive blocks are written together.
      */
     public void definitelyFlushAll() {
-        bufferMgr.definitelyFlushAll();
+        List<Buffer> buffs = new ArrayList<Buffer>();
+        for (BasicBufferMgr part : partitions) {
+            buffs.addAll(part.dirtyBuffers());
+        }
+        sortByBlock(buffs);
+        writeInOrder(buffs, -1);
+    }
+
+    /**
+     * Changes the number of buffers while the buffer manager is in use. The
+     * buffers are divided among the partitions as by the constructor. A
+     * partition can only give up unpinned buffers, so a shrinking pool may
+     * remain larger than requested; it can be shrunk again later.
+     *
+     * @param numbuffers the desired number of buffers
+     * @return the number of buffers after the change
+     */
+    public synchronized int resize(int numbuffers) {
+        if (numbuffers < partitions.length) {
+            throw new IllegalArgumentException("cannot split " + numbuffers
+                    + " buffers into " + partitions.length + " partitions");
+        }
+        int size = 0;
+        for (int i = 0; i < partitions.length; i++) {
+            size += partitions[i].resize(partitionSize(numbuffers, i));
+        }
+        return size;
+    }
+
+    /**
+     * Reserves between min and max buffers for an operator, potentially
+     * waiting until enough buffers can be reserved. As many buffers as
+     * possible, up to max, are granted. A reservation can only be granted
+     * from the unpinned buffers that are not reserved already, and the
+     * reservations together may not exceed three quarters of the pool, so
+     * that the remaining buffers stay free for ordinary pins. The reserved
+     * buffers are spread as evenly as possible over the partitions. A thread
+     * that waits is woken up whenever a buffer is unpinned or a reservation
+     * is released. If not even min buffers can be reserved within a fixed
+     * time period, then a {@link BufferAbortException} is thrown.
+     * <p>
+     * The reserved buffers are only used by the pins that pass the
+     * reservation, as {@link #pin(Block, List)} does.
+     *
+     * @param min the smallest acceptable number of buffers
+     * @param max the largest useful number of buffers
+     * @return the reservation
+     */
+    public synchronized BufferReservation reserve(int min, int max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("cannot reserve between "
+                    + min + " and " + max + " buffers");
+        }
+        long timestamp = System.currentTimeMillis();
+        boolean waited = false;
+        waitingReservers++;
+        try {
+            while (true) {
+                int free = reservable();
+                if (free >= min) {
+                    BufferReservation res = grant(Math.min(max, free));
+                    if (res.size() >= min) {
+                        reserved += res.size();
+                        if (waited) {
+                            stats.waited(System.currentTimeMillis() - timestamp);
+                        }
+                        return res;
+                    }
+                    // an unpinned buffer was pinned meanwhile
+                    for (BasicBufferMgr part : partitions) {
+                        part.release(res);
+                    }
+                }
+                long remaining = MAX_TIME - (System.currentTimeMillis() - timestamp);
+                if (remaining <= 0) {
+                    stats.aborted();
+                    throw new BufferAbortException();
+                }
+                wait(remaining);
+                waited = true;
+            }
+        } catch (InterruptedException e) {
+            stats.aborted();
+            throw new BufferAbortException();
+        } finally {
+            waitingReservers--;
+        }
+    }
+
+    /**
+     * Returns the number of buffers that a new reservation could obtain
+     * without waiting. The multibuffer operators use this value to estimate
+     * their costs.
+     *
+     * @return the number of buffers that can be reserved
+     */
+    public synchronized int reservable() {
+        int limit = size() - Math.max(1, size() / 4) - reserved;
+        int free = 0;
+        for (BasicBufferMgr part : partitions) {
+            free += part.reservable();
+        }
+        return Math.max(0, Math.min(free, limit));
+    }
+
+    /**
+     * Returns the buffers of a reservation to the pool, and wakes up the
+     * threads waiting to reserve buffers.
+     *
+     * @param res the reservation being released
+     */
+    synchronized void release(BufferReservation res) {
+        for (BasicBufferMgr part : partitions) {
+            part.release(res);
+        }
+        reserved -= res.size();
+        notifyAll();
+    }
+
+    /**
+     * Reserves up to the specified number of buffers, taking an equal share
+     * from each partition first, and then whatever the partitions can spare.
+     */
+    private BufferReservation grant(int count) {
+        BufferReservation res = new BufferReservation(this, partitions.length);
+        int share = (count + partitions.length - 1) / partitions.length;
+        int granted = 0;
+        for (BasicBufferMgr part : partitions) {
+            granted += part.reserve(res, Math.min(share, count - granted));
+        }
+        for (BasicBufferMgr part : partitions) {
+            if (granted < count) {
+                granted += part.reserve(res, count - granted);
+            }
+        }
+        return res;
+    }
+
+    // called whenever a buffer may have become unpinned
+    private void unpinned() {
+        if (waitingReservers > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of buffers.
+     *
+     * @return the number of buffers in the pool
+     */
+    public int size() {
+        int size = 0;
+        for (BasicBufferMgr part : partitions) {
+            size += part.getBuffers().length;
+        }
+        return size;
     }
 
     /**
@@ -120,40 +419,374 @@ public class BufferMgr {
      * @return the number of available buffers
      */
     public int available() {
-        return bufferMgr.available();
+        int avail = 0;
+        for (BasicBufferMgr part : partitions) {
+            avail += part.available();
+        }
+        return avail;
+    }
+
+    /**
+     * Starts a background thread that writes dirty unpinned buffers to disk,
+     * so that the specified fraction of the unpinned buffers is kept clean.
+     * Any cleaner that is already running is stopped first.
+     *
+     * @param cleanFraction the fraction of unpinned buffers to keep clean,
+     * between 0 and 1
+     */
+    public synchronized void startPageCleaner(double cleanFraction) {
+        if (cleanFraction <= 0 || cleanFraction > 1) {
+            throw new IllegalArgumentException("invalid clean fraction "
+                    + cleanFraction);
+        }
+        stopPageCleaner();
+        cleaner = new PageCleaner(partitions, cleanFraction);
+        cleaner.start();
+    }
+
+    /**
+     * Stops the background page cleaner, if it is running.
+     */
+    public synchronized void stopPageCleaner() {
+        if (cleaner != null) {
+            cleaner.shutdown();
+            cleaner = null;
+        }
+    }
+
+    /**
+     * Stops the background threads of the buffer manager: the page cleaner,
+     * the read-ahead thread and the I/O threads. The buffers can still be
+     * used afterwards, and their misses are read by the pinning threads.
+     * The system calls this method before it replaces the buffer manager.
+     */
+    public synchronized void shutdown() {
+        stopPageCleaner();
+        setReadAhead(0);
+        io.shutdown();
+    }
+
+    /**
+     * Sets the number of threads that read the blocks of buffer misses. With
+     * no threads, each miss is read by the thread that pins the block, but
+     * still without holding the lock of the block's partition.
+     *
+     * @param numthreads the number of I/O threads
+     */
+    public synchronized void setIOThreads(int numthreads) {
+        IOEngine old = io;
+        io = new IOEngine(numthreads);
+        for (BasicBufferMgr part : partitions) {
+            part.setIOEngine(io);
+        }
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Enables sequential read-ahead. When a thread pins consecutive blocks of
+     * a file, the following blocks are read into unpinned buffers by a
+     * background thread, so that they are already in the pool when they are
+     * pinned. The window is limited to a quarter of the buffers, so that
+     * read-ahead cannot flush the pool. A window of 0 disables read-ahead.
+     *
+     * @param window the number of blocks to read ahead of a scan
+     */
+    public synchronized void setReadAhead(int window) {
+        if (readAhead != null) {
+            readAhead.shutdown();
+            readAhead = null;
+        }
+        window = Math.min(window, getBuffers().length / 4);
+        if (window > 0) {
+            readAhead = new ReadAhead(this, window);
+        }
+    }
+
+    /**
+     * Tells the buffer manager that the specified blocks of a file are about
+     * to be read, so that they can be read into the pool in the background.
+     * The hint is ignored if read-ahead is disabled.
+     *
+     * @param filename the name of the file
+     * @param blknum the number of the first block to be read
+     * @param count the number of blocks to be read
+     */
+    public void readAhead(String filename, int blknum, int count) {
+        ReadAhead ra = readAhead;
+        if (ra != null) {
+            ra.hint(filename, blknum, count);
+        }
+    }
+
+    /**
+     * Notes that the specified block is about to be read ahead, unless it is
+     * already in the pool.
+     *
+     * @param blk a reference to a disk block
+     * @return false if the block is already in the pool
+     */
+    boolean startPrefetch(Block blk) {
+        return partitionFor(blk).startPrefetch(blk);
+    }
+
+    /**
+     * Forgets a block whose read ahead has failed.
+     *
+     * @param blk a reference to a disk block
+     */
+    void cancelPrefetch(Block blk) {
+        partitionFor(blk).cancelPrefetch(blk);
+    }
+
+    /**
+     * Places the specified block, already read into the specified page, into
+     * its partition without pinning it. The block is dropped if it has been
+     * pinned since its read ahead started.
+     *
+     * @param blk a reference to a disk block
+     * @param p a page holding the contents of the block
+     */
+    void prefetch(Block blk, Page p) {
+        partitionFor(blk).prefetch(blk, p);
+    }
+
+    /**
+     * Returns true if the specified block is currently in the pool.
+     *
+     * @param blk a reference to a disk block
+     * @return true if the block is in the pool
+     */
+    boolean isResident(Block blk) {
+        return partitionFor(blk).isResident(blk);
+    }
+
+    /**
+     * Registers the buffer manager and its statistics with the platform MBean
+     * server, so that the pool can be observed and resized through JMX. The
+     * buffer manager is registered as "simpledb:type=BufferMgr" and the
+     * statistics as "simpledb:type=BufferPool".
+     */
+    public void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("simpledb:type=BufferMgr");
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new RuntimeException("cannot register buffer manager");
+        }
+        stats.register("simpledb:type=BufferPool");
+    }
+
+    public int getSize() {
+        return size();
+    }
+
+    public void setSize(int numbuffers) {
+        resize(numbuffers);
+    }
+
+    public int getAvailable() {
+        return available();
+    }
+
+    public long getMemory() {
+        return arena.footprint();
+    }
+
+    /**
+     * Sorts the specified buffers by file name and block number, so that
+     * they can be written in disk order. Buffers that hold no block are
+     * removed. Since a buffer can be reassigned at any time, the sort uses
+     * the blocks that the buffers hold when the method is called.
+     *
+     * @param buffs the buffers to be sorted
+     */
+    static void sortByBlock(List<Buffer> buffs) {
+        final Map<Buffer, Block> blocks = new IdentityHashMap<Buffer, Block>();
+        for (Iterator<Buffer> iter = buffs.iterator(); iter.hasNext();) {
+            Buffer buff = iter.next();
+            Block blk = buff.block();
+            if (blk == null) {
+                iter.remove();
+            } else {
+                blocks.put(buff, blk);
+            }
+        }
+        Collections.sort(buffs, new Comparator<Buffer>() {
+            public int compare(Buffer b1, Buffer b2) {
+                Block blk1 = blocks.get(b1), blk2 = blocks.get(b2);
+                int cmp = blk1.fileName().compareTo(blk2.fileName());
+                return (cmp != 0) ? cmp : blk1.number() - blk2.number();
+            }
+        });
+    }
+
+    /**
+     * Writes the specified buffers, which must be sorted by block. Buffers
+     * holding consecutive blocks of a file are written by a single gathering
+     * write.
+     *
+     * @param buffs the buffers, sorted by block
+     * @param txnum the transaction whose modifications are written, or -1 to
+     * write every dirty buffer
+     */
+    static void writeInOrder(List<Buffer> buffs, int txnum) {
+        List<Buffer> run = new ArrayList<Buffer>();
+        Block last = null;
+        for (Buffer buff : buffs) {
+            Block blk = buff.block();
+            if (blk == null) {
+                continue;
+            }
+            if (run.size() == MAX_RUN || (last != null
+                    && !(blk.fileName().equals(last.fileName())
+                    && blk.number() == last.number() + 1))) {
+                Buffer.flush(run, txnum);
+                run.clear();
+            }
+            run.add(buff);
+            last = blk;
+        }
+        if (!run.isEmpty()) {
+            Buffer.flush(run, txnum);
+        }
+    }
+
+    private int partitionSize(int numbuffers, int i) {
+        int size = numbuffers / partitions.length;
+        if (i < numbuffers % partitions.length) {
+            size++;
+        }
+        return size;
     }
 
     private boolean waitingTooLong(long starttime) {
         return System.currentTimeMillis() - starttime > MAX_TIME;
     }
 
+    private Buffer pinNew(BasicBufferMgr part, String filename,
+            PageFormatter fmtr, List<BufferReservation> reservations) {
+        part.lock();
+        try {
+            long timestamp = System.currentTimeMillis();
+            Buffer buff = part.pinNew(filename, fmtr, reservations);
+            boolean waited = false;
+            while (buff == null && !waitingTooLong(timestamp)) {
+                part.awaitUnpin(MAX_TIME, waited);
+                waited = true;
+                buff = part.pinNew(filename, fmtr, reservations);
+            }
+            if (waited) {
+                part.passOnWakeup();
+                stats.waited(System.currentTimeMillis() - timestamp);
+            }
+            if (buff == null) {
+                stats.aborted();
+                throw new BufferAbortException();
+            }
+            return buff;
+        } catch (InterruptedException e) {
+            part.passOnWakeup();
+            stats.aborted();
+            throw new BufferAbortException();
+        } finally {
+            part.unlock();
+        }
+    }
+
+    private BasicBufferMgr partitionFor(Block blk) {
+        if (partitions.length == 1) {
+            return partitions[0];
+        }
+        return partitions[(blk.hashCode() & Integer.MAX_VALUE) % partitions.length];
+    }
+
+    private Object appendLock(String filename) {
+        Object lock = appendLocks.get(filename);
+        if (lock == null) {
+            Object newlock = new Object();
+            lock = appendLocks.putIfAbsent(filename, newlock);
+            if (lock == null) {
+                lock = newlock;
+            }
+        }
+        return lock;
+    }
+
     /**
      * Set buffer selection strategy
      *
-     * @param s (0 - Naive, 1 - FIFO, 2 - LRU, 3 - Clock)
+     * @param s (0 - Naive, 1 - FIFO, 2 - LRU, 3 - Clock, 4 - LRU-2, 5 - 2Q,
+     * 6 - ARC)
      */
     public void setStrategy(int s) {
-        this.bufferMgr.setStrategy(s);
+        for (BasicBufferMgr part : partitions) {
+            part.setStrategy(s);
+        }
+    }
+
+    /**
+     * Sets the buffer replacement policy by name. Each partition switches to
+     * its own instance of the policy, initialized from the current state of
+     * the partition's buffers.
+     *
+     * @param name one of "naive", "fifo", "lru", "clock", "lru2", "2q" or
+     * "arc"
+     */
+    public void setPolicy(String name) {
+        for (BasicBufferMgr part : partitions) {
+            part.setPolicy(name);
+        }
     }
 
     /**
      * @return Allocated buffers
      */
     public Buffer[] getBuffers() {
-        return this.bufferMgr.getBuffers();
+        if (partitions.length == 1) {
+            return partitions[0].getBuffers();
+        }
+        int size = 0;
+        for (BasicBufferMgr part : partitions) {
+            size += part.getBuffers().length;
+        }
+        Buffer[] buffers = new Buffer[size];
+        int pos = 0;
+        for (BasicBufferMgr part : partitions) {
+            Buffer[] pool = part.getBuffers();
+            System.arraycopy(pool, 0, buffers, pos, pool.length);
+            pos += pool.length;
+        }
+        return buffers;
+    }
+
+    /**
+     * Returns the statistics about the use of the buffers.
+     *
+     * @return the buffer pool statistics
+     */
+    public BufferStats stats() {
+        return stats;
     }
 
-    public void status() {
+    /**
+     * Describes the buffer pool, for callers to log: the statistics, followed
+     * by the block held by each buffer.
+     *
+     * @return the status of the buffer pool
+     */
+    public String status() {
+        StringBuilder sb = new StringBuilder(stats.toString());
         Buffer[] bufferArray = getBuffers();
         for (int i = 0; i < bufferArray.length; i++) {
-            System.out.print("Buffer " + i + ":");
-            System.out.print("\n");
-            System.out.print(bufferArray[i].block());
-            System.out.print("\n");
-            System.out.print(bufferArray[i].getTimeAdded());
-            System.out.print("\n");
-            System.out.print(bufferArray[i].getTimeAccessed());
-            System.out.print("\n");
+            sb.append("Buffer ").append(i).append(": ")
+                    .append(bufferArray[i].block()).append("\n");
         }
+        return sb.toString();
     }
 }
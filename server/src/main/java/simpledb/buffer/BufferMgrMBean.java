@@ -0,0 +1,31 @@
+package simpledb.buffer;
+
+/**
+ * The JMX management interface of {@link BufferMgr}, which allows the size
+ * of the buffer pool to be tuned while the server is running.
+ */
+public interface BufferMgrMBean {
+
+    /**
+     * @return the number of buffers in the pool
+     */
+    int getSize();
+
+    /**
+     * Resizes the pool; see {@link BufferMgr#resize(int)}.
+     *
+     * @param numbuffers the desired number of buffers
+     */
+    void setSize(int numbuffers);
+
+    /**
+     * @return the number of unpinned buffers
+     */
+    int getAvailable();
+
+    /**
+     * @return the number of bytes of memory held for the pages of the pool,
+     * including frames freed by shrinking it
+     */
+    long getMemory();
+}
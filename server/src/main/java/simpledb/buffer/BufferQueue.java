@@ -0,0 +1,132 @@
+package simpledb.buffer;
+
+/**
+ * A doubly linked queue of buffers. The links are stored in the buffers
+ * themselves, so adding or removing a buffer takes constant time and does not
+ * allocate. A buffer can belong to at most one queue at a time.
+ */
+class BufferQueue {
+
+    private Buffer head, tail;
+    private int size;
+
+    /**
+     * Appends the buffer to the end of the queue.
+     *
+     * @param buff a buffer that is not in any queue
+     */
+    void addLast(Buffer buff) {
+        buff.queue = this;
+        buff.qprev = tail;
+        buff.qnext = null;
+        if (tail == null) {
+            head = buff;
+        } else {
+            tail.qnext = buff;
+        }
+        tail = buff;
+        size++;
+    }
+
+    /**
+     * Inserts the buffer at the front of the queue.
+     *
+     * @param buff a buffer that is not in any queue
+     */
+    void addFirst(Buffer buff) {
+        buff.queue = this;
+        buff.qprev = null;
+        buff.qnext = head;
+        if (head == null) {
+            tail = buff;
+        } else {
+            head.qprev = buff;
+        }
+        head = buff;
+        size++;
+    }
+
+    /**
+     * Removes the buffer from the queue, if it is there.
+     *
+     * @param buff the buffer to be removed
+     */
+    void remove(Buffer buff) {
+        if (buff.queue != this) {
+            return;
+        }
+        if (buff.qprev == null) {
+            head = buff.qnext;
+        } else {
+            buff.qprev.qnext = buff.qnext;
+        }
+        if (buff.qnext == null) {
+            tail = buff.qprev;
+        } else {
+            buff.qnext.qprev = buff.qprev;
+        }
+        buff.queue = null;
+        buff.qprev = buff.qnext = null;
+        size--;
+    }
+
+    /**
+     * Moves the buffer to the end of the queue, adding it if necessary.
+     *
+     * @param buff the buffer to be moved
+     */
+    void moveToLast(Buffer buff) {
+        if (buff.queue != null) {
+            buff.queue.remove(buff);
+        }
+        addLast(buff);
+    }
+
+    /**
+     * Returns the buffer at the front of the queue, or null if the queue is
+     * empty.
+     *
+     * @return the first buffer
+     */
+    Buffer first() {
+        return head;
+    }
+
+    /**
+     * Returns the buffer that follows the specified buffer in the queue.
+     *
+     * @param buff a buffer in this queue
+     * @return the next buffer, or null if buff is the last one
+     */
+    Buffer next(Buffer buff) {
+        return buff.qnext;
+    }
+
+    /**
+     * Returns true if the buffer is in this queue.
+     *
+     * @param buff the buffer
+     * @return true if the buffer is in the queue
+     */
+    boolean contains(Buffer buff) {
+        return buff.queue == this;
+    }
+
+    /**
+     * Returns the number of buffers in the queue.
+     *
+     * @return the size of the queue
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every buffer from the queue.
+     */
+    void clear() {
+        while (head != null) {
+            remove(head);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package simpledb.buffer;
+
+/**
+ * A number of buffers set aside for an operator, such as a multibuffer
+ * product or a sort, that needs several buffers at once. A reservation is
+ * obtained from {@link BufferMgr#reserve(int, int)} and must be released
+ * when the operator is done with its buffers.
+ * <p>
+ * The reserved buffers are spread over the partitions of the buffer pool.
+ * While the reservation is held, each partition keeps its share of unpinned
+ * buffers for the pins made on behalf of the holder, and other pins wait
+ * rather than take them. A reserved buffer that the holder pins returns to
+ * the reservation when it is unpinned.
+ */
+public class BufferReservation {
+
+    private BufferMgr bufferMgr;
+    private int size = 0;
+    // the unused buffers in each partition, guarded by the partition's lock
+    private int[] quota;
+    private volatile boolean released = false;
+
+    BufferReservation(BufferMgr bufferMgr, int numpartitions) {
+        this.bufferMgr = bufferMgr;
+        quota = new int[numpartitions];
+    }
+
+    /**
+     * Returns the number of buffers that were reserved.
+     *
+     * @return the number of reserved buffers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gives the buffers back to the buffer manager. Releasing a reservation
+     * more than once has no effect.
+     */
+    public void release() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+        }
+        bufferMgr.release(this);
+    }
+
+    /**
+     * Returns true if the reservation has been released.
+     *
+     * @return true if the reservation has been released
+     */
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Adds unused buffers of the specified partition to the reservation.
+     * The caller must hold the partition's lock.
+     *
+     * @param partition the index of the partition
+     * @param count the number of buffers
+     */
+    void add(int partition, int count) {
+        quota[partition] += count;
+        size += count;
+    }
+
+    /**
+     * Returns true if the reservation has an unused buffer in the specified
+     * partition. The caller must hold the partition's lock.
+     *
+     * @param partition the index of the partition
+     * @return true if a buffer can be taken from the reservation
+     */
+    boolean hasQuota(int partition) {
+        return !released && quota[partition] > 0;
+    }
+
+    /**
+     * Takes one unused buffer of the specified partition for a pin. The
+     * caller must hold the partition's lock, and must have checked
+     * {@link #hasQuota(int)}.
+     *
+     * @param partition the index of the partition
+     */
+    void take(int partition) {
+        quota[partition]--;
+    }
+
+    /**
+     * Returns a buffer taken by {@link #take(int)}, once it is unpinned. The
+     * caller must hold the partition's lock.
+     *
+     * @param partition the index of the partition
+     * @return false if the reservation has been released, in which case the
+     * buffer is not returned to it
+     */
+    boolean giveBack(int partition) {
+        if (released) {
+            return false;
+        }
+        quota[partition]++;
+        return true;
+    }
+
+    /**
+     * Removes the unused buffers of the specified partition from the
+     * reservation. The caller must hold the partition's lock.
+     *
+     * @param partition the index of the partition
+     * @return the number of buffers removed
+     */
+    int clear(int partition) {
+        int count = quota[partition];
+        quota[partition] = 0;
+        return count;
+    }
+}
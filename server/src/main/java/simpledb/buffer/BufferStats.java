@@ -0,0 +1,327 @@
+package simpledb.buffer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics about the use of a buffer pool. The buffer manager counts the
+ * pins, hits, misses and evictions of each file as well as of the pool as a
+ * whole, and measures how long threads wait for a buffer to become
+ * available. The counters can be read through this class or, once
+ * {@link #register(String) registered}, through JMX.
+ * <p>
+ * The temporary files of materialized operators, whose names begin with
+ * "temp", are counted together under the name {@link #TEMP_FILES}: a server
+ * creates new ones for as long as it runs, and counters kept for each of
+ * them would never be freed.
+ * <p>
+ * The counters are updated without locking, so a snapshot taken while the
+ * pool is in use may be slightly inconsistent.
+ */
+public class BufferStats implements BufferStatsMBean {
+
+    /**
+     * The upper bounds, in milliseconds, of the buckets of the wait time
+     * histogram. The last bucket counts all longer waits.
+     */
+    public static final long[] WAIT_BUCKETS = {1, 10, 100, 1000, 10000};
+
+    /**
+     * The name under which the temporary files are counted.
+     */
+    public static final String TEMP_FILES = "temp*";
+
+    private volatile FileStats global = new FileStats();
+    private ConcurrentMap<String, FileStats> files
+            = new ConcurrentHashMap<String, FileStats>();
+    private AtomicLong readAheads = new AtomicLong();
+    private AtomicLong waits = new AtomicLong();
+    private AtomicLong waitMillis = new AtomicLong();
+    private AtomicLongArray waitHistogram
+            = new AtomicLongArray(WAIT_BUCKETS.length + 1);
+    private AtomicLong aborts = new AtomicLong();
+
+    /**
+     * The counters of a single file.
+     */
+    public static class FileStats {
+
+        private AtomicLong pins = new AtomicLong();
+        private AtomicLong hits = new AtomicLong();
+        private AtomicLong misses = new AtomicLong();
+        private AtomicLong evictions = new AtomicLong();
+        private AtomicLong dirtyEvictions = new AtomicLong();
+
+        /**
+         * @return the number of times a block was pinned
+         */
+        public long getPins() {
+            return pins.get();
+        }
+
+        /**
+         * @return the number of pins that found the block in the pool
+         */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * @return the number of blocks read from disk, either by a pin or
+         * ahead of one
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * @return the fraction of reads satisfied from the pool, or 0 if no
+         * block has been read
+         */
+        public double getHitRatio() {
+            long h = hits.get(), m = misses.get();
+            return (h + m == 0) ? 0 : (double) h / (h + m);
+        }
+
+        /**
+         * @return the number of blocks replaced in the pool
+         */
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        /**
+         * @return the number of replaced blocks that had to be written first
+         */
+        public long getDirtyEvictions() {
+            return dirtyEvictions.get();
+        }
+
+        public String toString() {
+            return "pins=" + getPins() + " hits=" + getHits()
+                    + " misses=" + getMisses() + " evictions=" + getEvictions()
+                    + " dirty=" + getDirtyEvictions();
+        }
+    }
+
+    /**
+     * Returns the counters of the whole pool.
+     *
+     * @return the global counters
+     */
+    public FileStats global() {
+        return global;
+    }
+
+    /**
+     * Returns the counters of the specified file. A file that has not been
+     * used has all its counters at 0, and a temporary file has those of all
+     * temporary files.
+     *
+     * @param filename the name of the file
+     * @return the counters of the file
+     */
+    public FileStats file(String filename) {
+        FileStats fs = files.get(key(filename));
+        return (fs == null) ? new FileStats() : fs;
+    }
+
+    /**
+     * Returns the names of the files that have been used, in sorted order.
+     *
+     * @return the names of the files
+     */
+    public List<String> fileNames() {
+        List<String> names = new ArrayList<String>(files.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Sets all counters back to 0.
+     */
+    public void reset() {
+        global = new FileStats();
+        files.clear();
+        readAheads.set(0);
+        waits.set(0);
+        waitMillis.set(0);
+        for (int i = 0; i < waitHistogram.length(); i++) {
+            waitHistogram.set(i, 0);
+        }
+        aborts.set(0);
+    }
+
+    /**
+     * Registers the statistics with the platform MBean server under the
+     * specified name, replacing any object already registered under it.
+     *
+     * @param name the JMX object name, such as "simpledb:type=BufferPool"
+     */
+    public void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName oname = new ObjectName(name);
+            if (server.isRegistered(oname)) {
+                server.unregisterMBean(oname);
+            }
+            server.registerMBean(this, oname);
+        } catch (JMException e) {
+            throw new RuntimeException("cannot register " + name);
+        }
+    }
+
+    public long getPins() {
+        return global.getPins();
+    }
+
+    public long getHits() {
+        return global.getHits();
+    }
+
+    public long getMisses() {
+        return global.getMisses();
+    }
+
+    public double getHitRatio() {
+        return global.getHitRatio();
+    }
+
+    public long getEvictions() {
+        return global.getEvictions();
+    }
+
+    public long getDirtyEvictions() {
+        return global.getDirtyEvictions();
+    }
+
+    public long getReadAheads() {
+        return readAheads.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getWaitMillis() {
+        return waitMillis.get();
+    }
+
+    public long[] getWaitHistogram() {
+        long[] counts = new long[waitHistogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = waitHistogram.get(i);
+        }
+        return counts;
+    }
+
+    public long getAborts() {
+        return aborts.get();
+    }
+
+    public String[] getFileStatistics() {
+        List<String> names = fileNames();
+        String[] result = new String[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = names.get(i) + ": " + file(names.get(i));
+        }
+        return result;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("buffer pool: ").append(global)
+                .append(" read-aheads=").append(getReadAheads())
+                .append(" waits=").append(getWaits())
+                .append(" wait-ms=").append(getWaitMillis())
+                .append(" aborts=").append(getAborts()).append("\n");
+        long[] counts = getWaitHistogram();
+        sb.append("waits by duration:");
+        for (int i = 0; i < counts.length; i++) {
+            sb.append((i < WAIT_BUCKETS.length) ? " <" + WAIT_BUCKETS[i] + "ms="
+                    : " more=").append(counts[i]);
+        }
+        sb.append("\n");
+        for (String line : getFileStatistics()) {
+            sb.append("  ").append(line).append("\n");
+        }
+        return sb.toString();
+    }
+
+    void pinned(String filename, boolean hit) {
+        count(global, hit);
+        count(fileStats(filename), hit);
+    }
+
+    void appended(String filename) {
+        global.pins.incrementAndGet();
+        fileStats(filename).pins.incrementAndGet();
+    }
+
+    void evicted(String filename, boolean dirty) {
+        evict(global, dirty);
+        evict(fileStats(filename), dirty);
+    }
+
+    void readAhead(String filename) {
+        readAheads.incrementAndGet();
+        global.misses.incrementAndGet();
+        fileStats(filename).misses.incrementAndGet();
+    }
+
+    void waited(long millis) {
+        waits.incrementAndGet();
+        waitMillis.addAndGet(millis);
+        int i = 0;
+        while (i < WAIT_BUCKETS.length && millis >= WAIT_BUCKETS[i]) {
+            i++;
+        }
+        waitHistogram.incrementAndGet(i);
+    }
+
+    void aborted() {
+        aborts.incrementAndGet();
+    }
+
+    private FileStats fileStats(String filename) {
+        String key = key(filename);
+        FileStats fs = files.get(key);
+        if (fs == null) {
+            FileStats newfs = new FileStats();
+            fs = files.putIfAbsent(key, newfs);
+            if (fs == null) {
+                fs = newfs;
+            }
+        }
+        return fs;
+    }
+
+    private static String key(String filename) {
+        return filename.startsWith("temp") ? TEMP_FILES : filename;
+    }
+
+    private static void count(FileStats fs, boolean hit) {
+        fs.pins.incrementAndGet();
+        if (hit) {
+            fs.hits.incrementAndGet();
+        } else {
+            fs.misses.incrementAndGet();
+        }
+    }
+
+    private static void evict(FileStats fs, boolean dirty) {
+        fs.evictions.incrementAndGet();
+        if (dirty) {
+            fs.dirtyEvictions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package simpledb.buffer;
+
+/**
+ * The JMX management interface of {@link BufferStats}.
+ */
+public interface BufferStatsMBean {
+
+    /**
+     * @return the number of times a block was pinned
+     */
+    long getPins();
+
+    /**
+     * @return the number of pins that found the block in the pool
+     */
+    long getHits();
+
+    /**
+     * @return the number of blocks read from disk
+     */
+    long getMisses();
+
+    /**
+     * @return the fraction of reads satisfied from the pool
+     */
+    double getHitRatio();
+
+    /**
+     * @return the number of blocks replaced in the pool
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of replaced blocks that had to be written first
+     */
+    long getDirtyEvictions();
+
+    /**
+     * @return the number of blocks read ahead of a sequential scan
+     */
+    long getReadAheads();
+
+    /**
+     * @return the number of pins that had to wait for a buffer
+     */
+    long getWaits();
+
+    /**
+     * @return the total time spent waiting for buffers, in milliseconds
+     */
+    long getWaitMillis();
+
+    /**
+     * @return the number of waits in each bucket of
+     * {@link BufferStats#WAIT_BUCKETS}, followed by the number of longer waits
+     */
+    long[] getWaitHistogram();
+
+    /**
+     * @return the number of pins that gave up with a
+     * {@link BufferAbortException}
+     */
+    long getAborts();
+
+    /**
+     * @return one line of counters for each file that has been used
+     */
+    String[] getFileStatistics();
+
+    /**
+     * Sets all counters back to 0.
+     */
+    void reset();
+}
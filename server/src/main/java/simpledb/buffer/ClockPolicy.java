@@ -0,0 +1,66 @@
+package simpledb.buffer;
+
+import simpledb.file.Block;
+
+/**
+ * The clock replacement policy. Each buffer has a reference bit, which is set
+ * whenever the buffer is pinned or unpinned. The clock hand sweeps the pool
+ * from where it last stopped, clearing reference bits, and replaces the
+ * first unpinned buffer whose bit is already clear. The hand only moves
+ * while choosing a victim.
+ */
+class ClockPolicy implements ReplacementPolicy {
+
+    private Buffer[] pool;
+    private boolean[] referenced;
+    private int hand;
+
+    /**
+     * Starts the hand just after the buffer that was used most recently, and
+     * clears every reference bit.
+     */
+    public void reset(Buffer[] pool) {
+        this.pool = pool;
+        referenced = new boolean[pool.length];
+        long latest = 0;
+        hand = 0;
+        for (Buffer buff : pool) {
+            long used = Math.max(buff.getTimeAdded(), buff.getTimeAccessed());
+            if (used > latest) {
+                latest = used;
+                hand = (buff.index() + 1) % pool.length;
+            }
+        }
+    }
+
+    public void assigned(Buffer buff) {
+    }
+
+    public void pinned(Buffer buff) {
+        referenced[buff.index()] = true;
+    }
+
+    public void unpinned(Buffer buff) {
+        referenced[buff.index()] = true;
+    }
+
+    public Buffer chooseUnpinnedBuffer(Block blk) {
+        // two sweeps are enough to clear every bit and come back around
+        for (int i = 0; i < 2 * pool.length; i++) {
+            Buffer buff = pool[hand];
+            hand = (hand + 1) % pool.length;
+            if (buff.isPinned()) {
+                continue;
+            }
+            if (referenced[buff.index()]) {
+                referenced[buff.index()] = false;
+            } else {
+                return buff;
+            }
+        }
+        return null;
+    }
+
+    public void replaceFailed(Buffer buff) {
+    }
+}
@@ -0,0 +1,60 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The buffers modified by each active transaction. A buffer enters the set
+ * of a transaction when the transaction first modifies it, and the set is
+ * handed over when the transaction's buffers are flushed at commit or
+ * rollback, so the flush touches only the buffers that the transaction
+ * dirtied instead of the whole pool.
+ * <p>
+ * A buffer is not removed from the set when it is written for some other
+ * reason, such as being replaced; the set can therefore contain buffers
+ * that are clean or that now hold another block, and the flush must check
+ * each buffer again.
+ */
+class DirtyPageTable {
+
+    private ConcurrentMap<Integer, Set<Buffer>> dirty
+            = new ConcurrentHashMap<Integer, Set<Buffer>>();
+
+    /**
+     * Records that the specified transaction has modified the specified
+     * buffer.
+     *
+     * @param txnum the id of the transaction
+     * @param buff the modified buffer
+     */
+    void dirtied(int txnum, Buffer buff) {
+        Set<Buffer> buffs = dirty.get(txnum);
+        if (buffs == null) {
+            Set<Buffer> newbuffs = Collections.newSetFromMap(
+                    new ConcurrentHashMap<Buffer, Boolean>());
+            buffs = dirty.putIfAbsent(txnum, newbuffs);
+            if (buffs == null) {
+                buffs = newbuffs;
+            }
+        }
+        buffs.add(buff);
+    }
+
+    /**
+     * Removes and returns the buffers modified by the specified transaction.
+     *
+     * @param txnum the id of the transaction
+     * @return the buffers the transaction has modified
+     */
+    List<Buffer> remove(int txnum) {
+        Set<Buffer> buffs = dirty.remove(txnum);
+        if (buffs == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Buffer>(buffs);
+    }
+}
@@ -0,0 +1,63 @@
+package simpledb.buffer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import simpledb.file.Block;
+
+/**
+ * The FIFO replacement policy, which replaces the unpinned buffer whose block
+ * was read in the longest time ago. Buffers are kept in a queue in the order
+ * in which they were assigned; a reassigned buffer moves to the end of the
+ * queue. Choosing a victim only has to step over the pinned buffers at the
+ * front of the queue.
+ */
+class FIFOPolicy implements ReplacementPolicy {
+
+    private BufferQueue queue = new BufferQueue();
+
+    public void reset(Buffer[] pool) {
+        queue.clear();
+        Buffer[] sorted = pool.clone();
+        Arrays.sort(sorted, new Comparator<Buffer>() {
+            public int compare(Buffer b1, Buffer b2) {
+                return compareTimes(b1.getTimeAdded(), b2.getTimeAdded(), b1, b2);
+            }
+        });
+        for (Buffer buff : sorted) {
+            queue.addLast(buff);
+        }
+    }
+
+    public void assigned(Buffer buff) {
+        queue.moveToLast(buff);
+    }
+
+    public void pinned(Buffer buff) {
+    }
+
+    public void unpinned(Buffer buff) {
+    }
+
+    public Buffer chooseUnpinnedBuffer(Block blk) {
+        for (Buffer buff = queue.first(); buff != null; buff = queue.next(buff)) {
+            if (!buff.isPinned()) {
+                return buff;
+            }
+        }
+        return null;
+    }
+
+    public void replaceFailed(Buffer buff) {
+    }
+
+    /**
+     * Orders two buffers by the specified timestamps, breaking ties by their
+     * position in the pool.
+     */
+    static int compareTimes(long t1, long t2, Buffer b1, Buffer b2) {
+        if (t1 != t2) {
+            return (t1 < t2) ? -1 : 1;
+        }
+        return b1.index() - b2.index();
+    }
+}
@@ -0,0 +1,109 @@
+package simpledb.buffer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Performs the disk reads of buffer misses. When a pin misses, the buffer
+ * manager assigns a buffer to the block and marks it as being read, then
+ * hands the read to this engine and releases the lock of its partition, so
+ * that other threads can use the partition while the read is in progress.
+ * Every thread that pins the block meanwhile waits for the same read.
+ * <p>
+ * The reads are performed by a pool of I/O threads. A read that no I/O
+ * thread has started by the time a thread waits for it is performed by the
+ * waiting thread itself, so that a miss never queues behind other reads
+ * when the I/O threads are busy. An engine without threads thus lets each
+ * waiting thread perform its read, still outside the partition's lock.
+ */
+class IOEngine {
+
+    private ExecutorService executor; // null if the waiting threads read
+
+    /**
+     * Creates an engine having the specified number of I/O threads.
+     *
+     * @param numthreads the number of I/O threads, possibly 0
+     */
+    IOEngine(int numthreads) {
+        if (numthreads > 0) {
+            executor = Executors.newFixedThreadPool(numthreads, new ThreadFactory() {
+                private int count = 0;
+
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "simpledb-io-" + count++);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts the specified read. If the engine has no threads, or has been
+     * shut down, the read is left to the first thread that waits for it.
+     *
+     * @param read the read to be performed
+     */
+    void execute(FutureTask<?> read) {
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(read);
+        } catch (RejectedExecutionException e) {
+            // the waiting thread performs the read
+        }
+    }
+
+    /**
+     * Waits for the specified read to complete. The wait is not interrupted,
+     * because the buffer cannot be released while an I/O thread may still
+     * read into its page. The interrupt status is cleared while the read is
+     * performed by this thread, since an interrupted read would close the
+     * file channel for every thread, and is restored afterwards.
+     *
+     * @param read a read passed to {@link #execute(FutureTask)}
+     */
+    void await(FutureTask<?> read) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            // the read is performed at most once; if it has already
+            // started, this does nothing
+            read.run();
+            while (true) {
+                try {
+                    read.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops the I/O threads once the reads already started are complete.
+     * The threads are not interrupted, because interrupting a read would
+     * close the file channel for every thread.
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import simpledb.file.Block;
+
+/**
+ * The LRU-2 replacement policy. The policy remembers the times of the last
+ * two references to each block, and replaces the unpinned buffer whose
+ * second-to-last reference is oldest. A block that has been referenced only
+ * once counts as having an infinitely old second reference, so the blocks
+ * touched once by a sequential scan are replaced before any block that has
+ * been reused. The reference history of a replaced block is retained for a
+ * while, so that a block that comes back soon after being replaced is still
+ * recognized as reused.
+ * <p>
+ * Time is measured by a counter that advances on each pin and each load. A
+ * block that is read ahead of its first pin sorts as recently loaded, but its
+ * load does not count as a reference. The unpinned
+ * buffers are kept in a sorted set, so choosing a victim and unpinning take
+ * logarithmic time.
+ */
+class LRUKPolicy implements ReplacementPolicy {
+
+    private long[] last;     // time of the most recent reference
+    private long[] previous; // time of the reference before that
+    private long[] loaded;   // retained history of a block not yet pinned, or -1
+    private long clock = 0;
+    private TreeSet<Buffer> unpinned;
+    private Map<Block, Long> retained;
+    private Block victimBlock; // the block of the last chosen buffer
+
+    public void reset(Buffer[] pool) {
+        last = new long[pool.length];
+        previous = new long[pool.length];
+        loaded = new long[pool.length];
+        Arrays.fill(loaded, -1);
+        unpinned = new TreeSet<Buffer>(new Comparator<Buffer>() {
+            public int compare(Buffer b1, Buffer b2) {
+                int i1 = b1.index(), i2 = b2.index();
+                if (previous[i1] != previous[i2]) {
+                    return (previous[i1] < previous[i2]) ? -1 : 1;
+                }
+                if (last[i1] != last[i2]) {
+                    return (last[i1] < last[i2]) ? -1 : 1;
+                }
+                return i1 - i2;
+            }
+        });
+        final int capacity = pool.length;
+        retained = new LinkedHashMap<Block, Long>() {
+            protected boolean removeEldestEntry(Map.Entry<Block, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+        // rebuild an approximate history from the order of the unpins
+        List<Buffer> sorted = new ArrayList<Buffer>();
+        for (Buffer buff : pool) {
+            sorted.add(buff);
+        }
+        Collections.sort(sorted, new Comparator<Buffer>() {
+            public int compare(Buffer b1, Buffer b2) {
+                return FIFOPolicy.compareTimes(b1.getTimeAccessed(),
+                        b2.getTimeAccessed(), b1, b2);
+            }
+        });
+        for (Buffer buff : sorted) {
+            if (buff.block() != null) {
+                last[buff.index()] = ++clock;
+            }
+            if (!buff.isPinned()) {
+                unpinned.add(buff);
+            }
+        }
+    }
+
+    public void assigned(Buffer buff) {
+        int i = buff.index();
+        Long history = retained.remove(buff.block());
+        loaded[i] = (history == null) ? 0 : history;
+        previous[i] = 0;
+        last[i] = ++clock;
+    }
+
+    public void pinned(Buffer buff) {
+        int i = buff.index();
+        unpinned.remove(buff);
+        previous[i] = (loaded[i] >= 0) ? loaded[i] : last[i];
+        loaded[i] = -1;
+        last[i] = ++clock;
+    }
+
+    public void unpinned(Buffer buff) {
+        if (!buff.isPinned()) {
+            unpinned.add(buff);
+        }
+    }
+
+    public Buffer chooseUnpinnedBuffer(Block blk) {
+        if (unpinned.isEmpty()) {
+            return null;
+        }
+        // the victim's history is about to change, so take it out of the set
+        Buffer buff = unpinned.pollFirst();
+        int i = buff.index();
+        long history = (loaded[i] >= 0) ? loaded[i] : last[i];
+        victimBlock = buff.block();
+        if (victimBlock != null && history > 0) {
+            retained.put(victimBlock, history);
+        }
+        return buff;
+    }
+
+    public void replaceFailed(Buffer buff) {
+        // the history of the buffer is unchanged, so it sorts where it was
+        if (victimBlock != null) {
+            retained.remove(victimBlock);
+        }
+        unpinned.add(buff);
+    }
+}
@@ -0,0 +1,57 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import simpledb.file.Block;
+
+/**
+ * The LRU replacement policy, which replaces the unpinned buffer that was
+ * unpinned the longest time ago. Only unpinned buffers are kept in the queue:
+ * a buffer leaves the queue when it is pinned and rejoins at the end when its
+ * pin count drops to zero, so the victim is always at the front.
+ */
+class LRUPolicy implements ReplacementPolicy {
+
+    private BufferQueue queue = new BufferQueue();
+
+    public void reset(Buffer[] pool) {
+        queue.clear();
+        List<Buffer> unpinned = new ArrayList<Buffer>();
+        for (Buffer buff : pool) {
+            if (!buff.isPinned()) {
+                unpinned.add(buff);
+            }
+        }
+        Collections.sort(unpinned, new Comparator<Buffer>() {
+            public int compare(Buffer b1, Buffer b2) {
+                return FIFOPolicy.compareTimes(b1.getTimeAccessed(),
+                        b2.getTimeAccessed(), b1, b2);
+            }
+        });
+        for (Buffer buff : unpinned) {
+            queue.addLast(buff);
+        }
+    }
+
+    public void assigned(Buffer buff) {
+    }
+
+    public void pinned(Buffer buff) {
+        queue.remove(buff);
+    }
+
+    public void unpinned(Buffer buff) {
+        if (!buff.isPinned()) {
+            queue.moveToLast(buff);
+        }
+    }
+
+    public Buffer chooseUnpinnedBuffer(Block blk) {
+        return queue.first();
+    }
+
+    public void replaceFailed(Buffer buff) {
+    }
+}
@@ -0,0 +1,46 @@
+package simpledb.buffer;
+
+import java.util.BitSet;
+import simpledb.file.Block;
+
+/**
+ * The naive replacement policy, which replaces the unpinned buffer that comes
+ * first in the pool. The unpinned buffers are kept in a bit set, so finding
+ * the first one examines a machine word at a time rather than every buffer.
+ */
+class NaivePolicy implements ReplacementPolicy {
+
+    private Buffer[] pool;
+    private BitSet unpinned = new BitSet();
+
+    public void reset(Buffer[] pool) {
+        this.pool = pool;
+        unpinned.clear();
+        for (Buffer buff : pool) {
+            if (!buff.isPinned()) {
+                unpinned.set(buff.index());
+            }
+        }
+    }
+
+    public void assigned(Buffer buff) {
+    }
+
+    public void pinned(Buffer buff) {
+        unpinned.clear(buff.index());
+    }
+
+    public void unpinned(Buffer buff) {
+        if (!buff.isPinned()) {
+            unpinned.set(buff.index());
+        }
+    }
+
+    public Buffer chooseUnpinnedBuffer(Block blk) {
+        int i = unpinned.nextSetBit(0);
+        return (i < 0) ? null : pool[i];
+    }
+
+    public void replaceFailed(Buffer buff) {
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A background thread that writes dirty unpinned buffers to disk, so that a
+ * thread that needs to replace a buffer rarely has to write the old page
+ * first. Every so often, the cleaner visits each partition of the buffer
+ * pool and writes enough dirty buffers to keep a given fraction of its
+ * unpinned buffers clean. The buffers are written in file and block order,
+ * and consecutive blocks are written together.
+ * Each buffer forces the log up to its LSN before its page is written, so
+ * the write-ahead rule is preserved.
+ */
+class PageCleaner extends Thread {
+
+    private static final long INTERVAL = 100; // milliseconds
+
+    private BasicBufferMgr[] partitions;
+    private double cleanFraction;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a cleaner for the specified partitions.
+     *
+     * @param partitions the partitions of the buffer pool
+     * @param cleanFraction the fraction of unpinned buffers to keep clean
+     */
+    PageCleaner(BasicBufferMgr[] partitions, double cleanFraction) {
+        super("simpledb-page-cleaner");
+        this.partitions = partitions;
+        this.cleanFraction = cleanFraction;
+        setDaemon(true);
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                cleanAll();
+                synchronized (this) {
+                    if (running) {
+                        wait(INTERVAL);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the loop test decides whether to continue
+            } catch (RuntimeException e) {
+                // a failed write is retried on the next pass
+            }
+        }
+    }
+
+    /**
+     * Stops the cleaner after its current pass. The thread is woken rather
+     * than interrupted, because interrupting a thread in the middle of a
+     * write would close the file channel for every thread.
+     */
+    synchronized void shutdown() {
+        running = false;
+        notify();
+    }
+
+    /**
+     * Makes one pass over the buffer pool.
+     */
+    void cleanAll() {
+        List<Buffer> buffs = new ArrayList<Buffer>();
+        for (BasicBufferMgr part : partitions) {
+            buffs.addAll(part.buffersToClean(cleanFraction));
+        }
+        BufferMgr.sortByBlock(buffs);
+        BufferMgr.writeInOrder(buffs, -1);
+    }
+}
@@ -0,0 +1,187 @@
+package simpledb.buffer;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import simpledb.file.Block;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+/**
+ * Reads blocks into the buffer pool ahead of sequential scans. The object
+ * keeps track of the most recently pinned block of each file. Once a few
+ * consecutive blocks of a file have been pinned, the next blocks of the file
+ * are read into unpinned buffers by a background thread, so that a scan is
+ * limited by the speed of the disk rather than by the latency of each read.
+ * A scan that knows its range in advance can instead give an explicit hint.
+ * Consecutive blocks that are not already in the pool are read by a single
+ * scattering read into pages owned by the background thread, and then copied
+ * into the pool. A block that is pinned while it is being read is not copied,
+ * because the page read may no longer hold its latest contents.
+ */
+class ReadAhead {
+
+    private static final int TRIGGER = 2; // consecutive pins that start read-ahead
+    private static final int MAX_STREAMS = 256;
+    private static final int MAX_RUN = 32; // blocks per multi-block read
+
+    private BufferMgr bufferMgr;
+    private int window;
+    private ConcurrentMap<String, Stream> streams
+            = new ConcurrentHashMap<String, Stream>();
+    private ExecutorService executor;
+    private volatile boolean stopped = false;
+    private Page[] pages; // used only by the background thread
+
+    /**
+     * The access pattern of a single file.
+     */
+    private static class Stream {
+
+        int last = -1;     // the most recently pinned block
+        int run = 0;       // the number of consecutive sequential pins
+        int horizon = -1;  // the last block already requested
+    }
+
+    /**
+     * Creates a read-ahead facility for the specified buffer manager.
+     *
+     * @param bufferMgr the buffer manager whose pool is filled
+     * @param window the number of blocks to read ahead of a scan
+     */
+    ReadAhead(BufferMgr bufferMgr, int window) {
+        this.bufferMgr = bufferMgr;
+        this.window = window;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "simpledb-read-ahead");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Records that the specified block is being pinned, and starts reading
+     * the following blocks if the file is being scanned sequentially.
+     *
+     * @param blk the block being pinned
+     */
+    void accessed(Block blk) {
+        Stream s = stream(blk.fileName());
+        int from, to;
+        synchronized (s) {
+            int blknum = blk.number();
+            if (blknum == s.last + 1) {
+                s.run++;
+            } else if (blknum != s.last) {
+                s.run = 0;
+                s.horizon = blknum;
+            }
+            s.last = blknum;
+            if (s.run < TRIGGER) {
+                return;
+            }
+            from = Math.max(s.horizon + 1, blknum + 1);
+            to = blknum + window;
+            if (from > to) {
+                return;
+            }
+            s.horizon = to;
+        }
+        submit(blk.fileName(), from, to);
+    }
+
+    /**
+     * Starts reading the specified blocks, which a scan has announced that it
+     * is about to pin.
+     *
+     * @param filename the name of the file
+     * @param blknum the number of the first block
+     * @param count the number of blocks
+     */
+    void hint(String filename, int blknum, int count) {
+        if (count <= 0) {
+            return;
+        }
+        Stream s = stream(filename);
+        synchronized (s) {
+            s.horizon = Math.max(s.horizon, blknum + count - 1);
+        }
+        submit(filename, blknum, blknum + count - 1);
+    }
+
+    /**
+     * Stops the background thread. Pending requests are discarded. The
+     * thread is not interrupted, because interrupting a read would close the
+     * file channel for every thread.
+     */
+    void shutdown() {
+        stopped = true;
+        executor.shutdown();
+    }
+
+    private void read(String filename, int blknum, int count) {
+        if (pages == null) {
+            pages = new Page[MAX_RUN];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = new Page();
+            }
+        }
+        Page[] run = (count == pages.length) ? pages : Arrays.copyOf(pages, count);
+        try {
+            Page.readBlocks(new Block(filename, blknum), run);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < count; i++) {
+                bufferMgr.cancelPrefetch(new Block(filename, blknum + i));
+            }
+            throw e;
+        }
+        for (int i = 0; i < count; i++) {
+            bufferMgr.prefetch(new Block(filename, blknum + i), run[i]);
+        }
+    }
+
+    private Stream stream(String filename) {
+        Stream s = streams.get(filename);
+        if (s == null) {
+            if (streams.size() >= MAX_STREAMS) {
+                streams.clear();
+            }
+            Stream news = new Stream();
+            s = streams.putIfAbsent(filename, news);
+            if (s == null) {
+                s = news;
+            }
+        }
+        return s;
+    }
+
+    private void submit(final String filename, final int from, final int to) {
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    int last = Math.min(to, SimpleDB.fileMgr().size(filename) - 1);
+                    int blknum = from;
+                    while (blknum <= last && !stopped) {
+                        int n = 0;
+                        while (blknum + n <= last && n < MAX_RUN
+                                && bufferMgr.startPrefetch(new Block(filename, blknum + n))) {
+                            n++;
+                        }
+                        if (n > 0) {
+                            read(filename, blknum, n);
+                        }
+                        blknum += n + 1; // skip the resident block
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // read-ahead has been disabled; the blocks will be read on demand
+        }
+    }
+}
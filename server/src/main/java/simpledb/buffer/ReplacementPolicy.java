@@ -0,0 +1,73 @@
+package simpledb.buffer;
+
+import simpledb.file.Block;
+
+/**
+ * The strategy that a basic buffer manager uses to choose which unpinned
+ * buffer to replace. The buffer manager tells its policy about every pin,
+ * unpin and block assignment, so that the policy can maintain whatever
+ * bookkeeping it needs incrementally, and choosing a victim does not require
+ * a scan of the whole pool.
+ * <p>
+ * A policy is used by a single basic buffer manager, and all of its methods
+ * are called while holding that manager's lock.
+ */
+interface ReplacementPolicy {
+
+    /**
+     * Initializes the policy for the specified pool. The pool may already be
+     * in use (for example, when the policy is changed at runtime), in which
+     * case the policy derives its initial state from the pin counts and
+     * timestamps of the buffers.
+     *
+     * @param pool the buffers managed by the policy
+     */
+    void reset(Buffer[] pool);
+
+    /**
+     * Called after the specified buffer has been assigned to a new block,
+     * either by reading an existing block or by appending a new one. The
+     * buffer is normally pinned next; a block that is read ahead is instead
+     * left unpinned, and the call is followed by {@link #unpinned(Buffer)}.
+     *
+     * @param buff the reassigned buffer
+     */
+    void assigned(Buffer buff);
+
+    /**
+     * Called each time the specified buffer is pinned.
+     *
+     * @param buff the pinned buffer
+     */
+    void pinned(Buffer buff);
+
+    /**
+     * Called each time the specified buffer is unpinned.
+     *
+     * @param buff the unpinned buffer
+     */
+    void unpinned(Buffer buff);
+
+    /**
+     * Returns the unpinned buffer that should be replaced next, or null if
+     * every buffer is pinned. The buffer manager will immediately reassign
+     * the returned buffer to the specified block.
+     *
+     * @param blk the block that is about to be read, or null if a new block
+     * is being appended
+     * @return the buffer to be replaced
+     */
+    Buffer chooseUnpinnedBuffer(Block blk);
+
+    /**
+     * Called when the buffer just returned by
+     * {@link #chooseUnpinnedBuffer(Block)} could not be reassigned, because
+     * writing its old block or reading its new one failed. The buffer is
+     * still unpinned, and the policy must be able to choose it again; a
+     * policy that stopped tracking the buffer when it chose it puts it back
+     * as it was.
+     *
+     * @param buff the buffer that was not replaced
+     */
+    void replaceFailed(Buffer buff);
+}
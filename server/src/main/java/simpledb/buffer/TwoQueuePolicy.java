@@ -0,0 +1,101 @@
+package simpledb.buffer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import simpledb.file.Block;
+
+/**
+ * The 2Q replacement policy. A block that is read for the first time goes
+ * into a FIFO queue (A1in). If a block is requested again after it has been
+ * replaced from A1in, which is recorded in a queue of block ids (A1out), it
+ * goes into an LRU queue (Am) instead. Buffers are replaced from A1in while
+ * it holds more than a quarter of the pool, and otherwise from the least
+ * recently used end of Am. A sequential scan therefore cycles through A1in
+ * and cannot push the reused blocks out of Am.
+ */
+class TwoQueuePolicy implements ReplacementPolicy {
+
+    private BufferQueue free = new BufferQueue();
+    private BufferQueue a1in = new BufferQueue();
+    private BufferQueue am = new BufferQueue();
+    private Map<Block, Boolean> a1out;
+    private int kin;
+    private BufferQueue victimQueue; // the queue of the last chosen buffer
+    private Block victimBlock;
+
+    public void reset(Buffer[] pool) {
+        free.clear();
+        a1in.clear();
+        am.clear();
+        kin = Math.max(1, pool.length / 4);
+        final int kout = Math.max(1, pool.length / 2);
+        a1out = new LinkedHashMap<Block, Boolean>() {
+            protected boolean removeEldestEntry(Map.Entry<Block, Boolean> eldest) {
+                return size() > kout;
+            }
+        };
+        for (Buffer buff : pool) {
+            if (buff.block() == null) {
+                free.addLast(buff);
+            } else {
+                a1in.addLast(buff);
+            }
+        }
+    }
+
+    public void assigned(Buffer buff) {
+        if (a1out.remove(buff.block()) != null) {
+            am.addLast(buff);
+        } else {
+            a1in.addLast(buff);
+        }
+    }
+
+    public void pinned(Buffer buff) {
+        if (am.contains(buff)) {
+            am.moveToLast(buff);
+        }
+    }
+
+    public void unpinned(Buffer buff) {
+    }
+
+    public Buffer chooseUnpinnedBuffer(Block blk) {
+        Buffer buff = firstUnpinned(free);
+        if (buff == null && a1in.size() > kin) {
+            buff = firstUnpinned(a1in);
+        }
+        if (buff == null) {
+            buff = firstUnpinned(am);
+        }
+        if (buff == null) {
+            buff = firstUnpinned(a1in);
+        }
+        if (buff == null) {
+            return null;
+        }
+        victimQueue = buff.queue;
+        victimBlock = buff.block();
+        if (victimQueue == a1in) {
+            a1out.put(victimBlock, Boolean.TRUE);
+        }
+        victimQueue.remove(buff);
+        return buff;
+    }
+
+    public void replaceFailed(Buffer buff) {
+        if (victimQueue == a1in) {
+            a1out.remove(victimBlock);
+        }
+        victimQueue.addFirst(buff);
+    }
+
+    private Buffer firstUnpinned(BufferQueue q) {
+        for (Buffer buff = q.first(); buff != null; buff = q.next(buff)) {
+            if (!buff.isPinned()) {
+                return buff;
+            }
+        }
+        return null;
+    }
+}
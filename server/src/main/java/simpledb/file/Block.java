@@ -40,7 +40,7 @@ public class Block {
    
    public boolean equals(Object obj) {
       Block blk = (Block) obj;
-      return filename.equals(blk.filename) && blknum == blk.blknum;
+      return blknum == blk.blknum && filename.equals(blk.filename);
    }
    
    public String toString() {
@@ -48,6 +48,6 @@ public class Block {
    }
    
    public int hashCode() {
-      return toString().hashCode();
+      return 31 * filename.hashCode() + blknum;
    }
 }
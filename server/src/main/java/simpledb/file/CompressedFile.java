@@ -0,0 +1,347 @@
+package simpledb.file;
+
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The storage of a file whose blocks are compressed on disk.
+ * Each block of the file is a logical block, which is compressed
+ * with deflate when it is written and decompressed into the page
+ * when it is read. The compressed block is stored in a slot of the
+ * physical file, whose size is a multiple of {@link #GRANULE} bytes.
+ * The slot begins with the length of the compressed block;
+ * a block that does not compress is stored as is.
+ * <p>
+ * The page-offset map gives the slot of each logical block.
+ * A block that is rewritten stays in its slot if it still fits,
+ * and otherwise moves to a free slot or to the end of the
+ * physical file. The map is held in memory and saved to its own file,
+ * whose name is that of the file followed by ".map",
+ * whenever the file is forced. The slot that a block leaves is
+ * reused only once the map no longer refers to it on disk,
+ * so a crash between forces never leaves the saved map pointing
+ * to a slot that holds another block.
+ * <p>
+ * Compression suits tables that are read much more often than
+ * they are written, and whose records waste space on padding,
+ * such as string fields that are mostly shorter than their maximum.
+ */
+class CompressedFile {
+   /**
+    * The unit in which slots are allocated, in bytes.
+    */
+   static final int GRANULE = 512;
+
+   /**
+    * The suffix of the name of the file that holds the map.
+    */
+   static final String MAP_SUFFIX = ".map";
+
+   private static final int MAP_MAGIC = 0x53444243; // "SDBC"
+   private static final int HEADER = 4;  // the length of the compressed block
+
+   private static final ThreadLocal<Codec> codecs = new ThreadLocal<Codec>() {
+      protected Codec initialValue() {
+         return new Codec();
+      }
+   };
+
+   private File mapFile;
+   private int numBlocks = 0;
+   private int[] offsets = new int[0];     // the slot of each block, in granules
+   private int[] capacities = new int[0];  // the size of each slot, in granules; 0 if none
+   private int end = 0;                    // the end of the slots, in granules
+   // free slots, by size
+   private TreeMap<Integer,Deque<Integer>> free = new TreeMap<Integer,Deque<Integer>>();
+   // slots left since the map was last saved, as {offset, capacity}
+   private List<int[]> released = new ArrayList<int[]>();
+   private boolean mapChanged = false;
+   private final Object forceLock = new Object();  // orders the saves of the map
+
+   /**
+    * The compression buffers of a thread.
+    * Deflaters and inflaters cannot be shared between threads.
+    */
+   private static class Codec {
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+      Inflater inflater = new Inflater(true);
+      byte[] block = new byte[0];
+      byte[] slot = new byte[0];
+
+      void ensureSize() {
+         if (block.length != BLOCK_SIZE) {
+            block = new byte[BLOCK_SIZE];
+            slot = new byte[HEADER + BLOCK_SIZE + GRANULE];
+         }
+      }
+   }
+
+   /**
+    * Opens the compressed storage whose map is held in the specified file,
+    * creating an empty map if the file does not exist.
+    * @param mapFile the file that holds the page-offset map
+    * @throws IOException
+    */
+   CompressedFile(File mapFile) throws IOException {
+      this.mapFile = mapFile;
+      if (mapFile.exists())
+         loadMap();
+      else
+         saveMap(0, offsets, capacities);
+   }
+
+   /**
+    * Returns the number of logical blocks in the file.
+    * @return the number of blocks
+    */
+   synchronized int size() {
+      return numBlocks;
+   }
+
+   /**
+    * Returns the slot that holds the specified logical block.
+    * @param blknum the number of the logical block
+    * @return the offset of the slot, in granules, or -1 if the block has none
+    */
+   synchronized int slot(int blknum) {
+      return (blknum < numBlocks && capacities[blknum] > 0) ? offsets[blknum] : -1;
+   }
+
+   /**
+    * Reads the specified logical block into the bytebuffer.
+    * A block that has never been written reads as zeros.
+    * @param fc the channel of the physical file
+    * @param blknum the number of the logical block
+    * @param bb the bytebuffer
+    * @throws IOException if the block cannot be read or decompressed
+    */
+   void read(FileChannel fc, int blknum, ByteBuffer bb) throws IOException {
+      int offset, capacity;
+      synchronized (this) {
+         capacity = (blknum < numBlocks) ? capacities[blknum] : 0;
+         offset = (capacity > 0) ? offsets[blknum] : 0;
+      }
+      bb.clear();
+      Codec c = codecs.get();
+      c.ensureSize();
+      if (capacity == 0) {
+         Arrays.fill(c.block, (byte) 0);
+         bb.put(c.block);
+         return;
+      }
+      ByteBuffer buf = ByteBuffer.wrap(c.slot, 0, Math.min(capacity * GRANULE, c.slot.length));
+      long pos = (long) offset * GRANULE;
+      while (buf.hasRemaining())
+         if (fc.read(buf, pos + buf.position()) < 0)
+            break;
+      int len = buf.getInt(0);
+      if (len < 0 || len > BLOCK_SIZE || HEADER + len > buf.position())
+         throw new IOException("corrupt slot for block " + blknum);
+      if (len == BLOCK_SIZE)
+         bb.put(c.slot, HEADER, BLOCK_SIZE);
+      else {
+         Inflater inf = c.inflater;
+         inf.reset();
+         inf.setInput(c.slot, HEADER, len);
+         try {
+            int n = 0;
+            while (n < BLOCK_SIZE && !inf.finished() && !inf.needsInput())
+               n += inf.inflate(c.block, n, BLOCK_SIZE - n);
+            if (n != BLOCK_SIZE)
+               throw new IOException("corrupt slot for block " + blknum);
+         }
+         catch (DataFormatException e) {
+            throw new IOException("corrupt slot for block " + blknum);
+         }
+         bb.put(c.block);
+      }
+   }
+
+   /**
+    * Compresses the bytebuffer into the specified logical block.
+    * @param fc the channel of the physical file
+    * @param blknum the number of the logical block
+    * @param bb the bytebuffer
+    * @throws IOException
+    */
+   void write(FileChannel fc, int blknum, ByteBuffer bb) throws IOException {
+      Codec c = codecs.get();
+      c.ensureSize();
+      bb.rewind();
+      bb.get(c.block);
+      Deflater def = c.deflater;
+      def.reset();
+      def.setInput(c.block);
+      def.finish();
+      int len = 0;
+      while (!def.finished() && len < BLOCK_SIZE)
+         len += def.deflate(c.slot, HEADER + len, BLOCK_SIZE - len);
+      // a length of BLOCK_SIZE means that the block is stored as is
+      if (!def.finished() || len >= BLOCK_SIZE) {
+         System.arraycopy(c.block, 0, c.slot, HEADER, BLOCK_SIZE);
+         len = BLOCK_SIZE;
+      }
+      ByteBuffer buf = ByteBuffer.wrap(c.slot, 0, HEADER + len);
+      buf.putInt(0, len);
+      long pos = (long) place(blknum, granules(HEADER + len)) * GRANULE;
+      while (buf.hasRemaining())
+         fc.write(buf, pos + buf.position());
+   }
+
+   /**
+    * Forces the physical file onto the disk and then saves the map,
+    * so that the saved map refers only to slots whose contents are on disk.
+    * @param fc the channel of the physical file
+    * @throws IOException
+    */
+   void force(FileChannel fc) throws IOException {
+      synchronized (forceLock) {
+         forceAndSave(fc);
+      }
+   }
+
+   private void forceAndSave(FileChannel fc) throws IOException {
+      int n;
+      int[] offs, caps;
+      List<int[]> toFree;
+      synchronized (this) {
+         n = numBlocks;
+         offs = Arrays.copyOf(offsets, n);
+         caps = Arrays.copyOf(capacities, n);
+         toFree = released;
+         released = new ArrayList<int[]>();
+         boolean changed = mapChanged;
+         mapChanged = false;
+         if (!changed)
+            offs = null;
+      }
+      fc.force(true);
+      if (offs != null)
+         saveMap(n, offs, caps);
+      synchronized (this) {
+         for (int[] slot : toFree)
+            addFree(slot[0], slot[1]);
+      }
+   }
+
+   /**
+    * Finds the slot into which the specified block is written,
+    * moving the block if its slot is too small.
+    * @return the offset of the slot, in granules
+    */
+   private synchronized int place(int blknum, int need) {
+      if (blknum >= offsets.length) {
+         int len = Math.max(blknum + 1, offsets.length * 2);
+         offsets = Arrays.copyOf(offsets, len);
+         capacities = Arrays.copyOf(capacities, len);
+      }
+      if (blknum >= numBlocks) {
+         numBlocks = blknum + 1;
+         mapChanged = true;
+      }
+      if (capacities[blknum] >= need)
+         return offsets[blknum];
+      if (capacities[blknum] > 0)
+         released.add(new int[] {offsets[blknum], capacities[blknum]});
+      Map.Entry<Integer,Deque<Integer>> e = free.ceilingEntry(need);
+      if (e != null) {
+         offsets[blknum] = e.getValue().removeFirst();
+         capacities[blknum] = e.getKey();
+         if (e.getValue().isEmpty())
+            free.remove(e.getKey());
+      }
+      else {
+         offsets[blknum] = end;
+         capacities[blknum] = need;
+         end += need;
+      }
+      mapChanged = true;
+      return offsets[blknum];
+   }
+
+   private void addFree(int offset, int capacity) {
+      Deque<Integer> slots = free.get(capacity);
+      if (slots == null) {
+         slots = new ArrayDeque<Integer>();
+         free.put(capacity, slots);
+      }
+      slots.add(offset);
+   }
+
+   private static int granules(int bytes) {
+      return (bytes + GRANULE - 1) / GRANULE;
+   }
+
+   /**
+    * Reads the map from its file, and determines the free slots
+    * as the gaps between the slots in use.
+    */
+   private void loadMap() throws IOException {
+      RandomAccessFile f = new RandomAccessFile(mapFile, "r");
+      try {
+         if (f.readInt() != MAP_MAGIC)
+            throw new IOException("invalid map " + mapFile);
+         numBlocks = f.readInt();
+         offsets = new int[numBlocks];
+         capacities = new int[numBlocks];
+         for (int i = 0; i < numBlocks; i++) {
+            offsets[i] = f.readInt();
+            capacities[i] = f.readInt();
+         }
+      }
+      finally {
+         f.close();
+      }
+      TreeMap<Integer,Integer> slots = new TreeMap<Integer,Integer>();
+      for (int i = 0; i < numBlocks; i++)
+         if (capacities[i] > 0)
+            slots.put(offsets[i], capacities[i]);
+      for (Map.Entry<Integer,Integer> e : slots.entrySet()) {
+         if (e.getKey() > end)
+            addFree(end, e.getKey() - end);
+         end = e.getKey() + e.getValue();
+      }
+   }
+
+   /**
+    * Writes the map to a new file, which then replaces the map's file,
+    * so that a crash never leaves a partly written map.
+    */
+   private void saveMap(int n, int[] offs, int[] caps) throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate(8 + 8 * n);
+      buf.putInt(MAP_MAGIC).putInt(n);
+      for (int i = 0; i < n; i++)
+         buf.putInt(offs[i]).putInt(caps[i]);
+      buf.flip();
+      File newFile = new File(mapFile.getPath() + ".new");
+      RandomAccessFile f = new RandomAccessFile(newFile, "rw");
+      try {
+         f.setLength(0);
+         FileChannel fc = f.getChannel();
+         while (buf.hasRemaining())
+            fc.write(buf);
+         fc.force(true);
+      }
+      finally {
+         f.close();
+      }
+      Files.move(newFile.toPath(), mapFile.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+}
@@ -0,0 +1,115 @@
+package simpledb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Access to the direct I/O of the platform, which transfers blocks
+ * between the disk and memory without going through the operating
+ * system's page cache.
+ * Direct I/O requires the position and length of each transfer
+ * to be multiples of the file system's block size,
+ * and the memory of each bytebuffer to be aligned on it.
+ * The pages of SimpleDB are therefore allocated at addresses
+ * that are multiples of {@link #ALIGNMENT}.
+ * <p>
+ * Direct I/O is available from Java 10 on, and only on some
+ * file systems and platforms. The class looks up the methods it
+ * needs by reflection, so that the database still runs on earlier
+ * versions, and {@link #open(File, int) open} returns null
+ * wherever direct I/O is not supported.
+ */
+class DirectIO {
+   /**
+    * The alignment of the memory of pages, in bytes.
+    */
+   static final int ALIGNMENT = 4096;
+
+   private static final OpenOption DIRECT = directOption();
+   private static final Method ALIGNED_SLICE =
+         method(ByteBuffer.class, "alignedSlice", int.class);
+   private static final Method FS_BLOCK_SIZE =
+         method(FileStore.class, "getBlockSize");
+
+   /**
+    * Allocates a direct bytebuffer of the specified size.
+    * If the size is a multiple of {@link #ALIGNMENT}, the memory of
+    * the bytebuffer is aligned on it whenever the platform allows.
+    * @param size the size of the bytebuffer in bytes
+    * @return the new bytebuffer
+    */
+   static ByteBuffer allocate(int size) {
+      if (ALIGNED_SLICE == null || size % ALIGNMENT != 0)
+         return ByteBuffer.allocateDirect(size);
+      try {
+         ByteBuffer bb = ByteBuffer.allocateDirect(size + ALIGNMENT);
+         bb = (ByteBuffer) ALIGNED_SLICE.invoke(bb, ALIGNMENT);
+         bb.limit(size);
+         return bb.slice();
+      }
+      catch (ReflectiveOperationException e) {
+         return ByteBuffer.allocateDirect(size);
+      }
+   }
+
+   /**
+    * Opens the specified file for direct I/O in blocks of the specified size,
+    * creating the file if it does not exist.
+    * @param f the file
+    * @param blocksize the size of the database's blocks
+    * @return a channel that reads and writes the file directly,
+    * or null if direct I/O is not supported for the file
+    */
+   static FileChannel open(File f, int blocksize) {
+      if (DIRECT == null || ALIGNED_SLICE == null || FS_BLOCK_SIZE == null
+            || blocksize % ALIGNMENT != 0)
+         return null;
+      try {
+         FileStore store = Files.getFileStore(f.getParentFile().toPath());
+         long fsblock = (Long) FS_BLOCK_SIZE.invoke(store);
+         if (fsblock <= 0 || ALIGNMENT % fsblock != 0)
+            return null;
+         return FileChannel.open(f.toPath(), StandardOpenOption.READ,
+               StandardOpenOption.WRITE, StandardOpenOption.CREATE, DIRECT);
+      }
+      catch (IOException e) {
+         // the file system does not support direct I/O
+         return null;
+      }
+      catch (UnsupportedOperationException e) {
+         return null;
+      }
+      catch (ReflectiveOperationException e) {
+         return null;
+      }
+   }
+
+   private static OpenOption directOption() {
+      try {
+         Class<?> c = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+         for (Object option : c.getEnumConstants())
+            if (option.toString().equals("DIRECT"))
+               return (OpenOption) option;
+         return null;
+      }
+      catch (ClassNotFoundException e) {
+         return null;
+      }
+   }
+
+   private static Method method(Class<?> c, String name, Class<?>... params) {
+      try {
+         return c.getMethod(name, params);
+      }
+      catch (NoSuchMethodException e) {
+         return null;
+      }
+   }
+}
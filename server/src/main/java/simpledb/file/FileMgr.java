@@ -3,8 +3,15 @@ package simpledb.file;
 import static simpledb.file.Page.BLOCK_SIZE;
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
-import java.util.*;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The SimpleDB file manager.
@@ -19,12 +26,128 @@ import java.util.*;
  * Method {@link #isNew() isNew} is called during system initialization by {@link simpledb.server.SimpleDB#init}.
  * Method {@link #size(String) size} is called by the log manager and transaction manager to
  * determine the end of the file.
+ * <p>
+ * The methods may be called concurrently.
+ * Reads and writes use positional I/O on a shared file channel,
+ * so they do not lock anything, and I/O on different blocks,
+ * even of the same file, can overlap.
+ * Only appends to the same file are serialized,
+ * so that each append gets its own new block.
+ * <p>
+ * The file manager keeps the length of each open file in memory,
+ * so {@link #size(String) size} makes no system call.
+ * A file does not grow a block at a time: when an append reaches the
+ * end of the space allocated to the file, the file is extended by
+ * a whole extent of blocks, whose size is set by
+ * {@link #setExtentSize(int) setExtentSize}.
+ * The file's size on disk thus changes once per extent,
+ * and forcing an append within the extent need not force the file's metadata.
+ * When the database is reopened, the blocks that were allocated
+ * but never appended count as part of the file.
+ * They contain only zeros, which every kind of SimpleDB page
+ * reads as an empty page.
+ * <p>
+ * The size of the database's blocks and the character set
+ * of its strings are stored in a header file,
+ * which the file manager creates along with the database
+ * and reads whenever it opens the database.
+ * <p>
+ * Writes are not synchronous: a written block reaches the disk
+ * only when its file is forced, by {@link #force(String) force}
+ * or {@link #forceAll() forceAll}.
+ * The file manager remembers which files have been written since
+ * they were last forced, so forcing a file that has not been written
+ * costs nothing. Temporary files are never forced, since their
+ * contents do not survive a restart anyway.
+ * <p>
+ * A file can instead be memory-mapped, which suits tables that are
+ * read much more often than they are written:
+ * a block of a mapped file is read by copying it from memory,
+ * without a system call.
+ * Mapping is chosen for the whole database by
+ * {@link #setMappedByDefault(boolean) setMappedByDefault}
+ * and for individual files by {@link #setMapped(String, boolean) setMapped}.
+ * <p>
+ * A file can also be opened for direct I/O, which bypasses the
+ * operating system's page cache, so that a block held in the
+ * buffer pool is not cached a second time by the operating system.
+ * Direct I/O is chosen for the whole database by
+ * {@link #setDirectByDefault(boolean) setDirectByDefault}
+ * and for individual files by {@link #setDirect(String, boolean) setDirect}.
+ * It needs pages whose memory is aligned on the file system's blocks,
+ * as the pages of a {@link PageArena} and those created by {@link Page#Page()} are.
+ * Where the platform or the file system does not support direct I/O,
+ * the file is opened as usual; and if a direct transfer fails,
+ * the file is reopened for buffered I/O and the transfer is retried.
+ * A memory-mapped file is not opened for direct I/O.
+ * <p>
+ * Finally, a file can be stored compressed, which suits large tables
+ * that are seldom written, such as history tables:
+ * each block is compressed when it is written and decompressed
+ * when it is read, trading processor time for fewer bytes
+ * on disk and fewer bytes read.
+ * Compression is chosen for individual files by
+ * {@link #setCompressed(String, boolean) setCompressed}
+ * before they are created; an existing file keeps the format
+ * in which it was created. A compressed file is neither
+ * memory-mapped nor opened for direct I/O.
  * @author Edward Sciore
  */
 public class FileMgr {
+   /**
+    * The name of the file that holds the database's block size.
+    */
+   public static final String HEADER_FILE = "simpledb.hdr";
+   
+   /**
+    * The block size of a new database, unless another size is requested.
+    */
+   public static final int DEFAULT_BLOCK_SIZE = 4096;
+   
+   /**
+    * The smallest and largest block sizes of a new database.
+    */
+   public static final int MIN_BLOCK_SIZE = 4096, MAX_BLOCK_SIZE = 65536;
+   
+   /**
+    * The block size of a database that has no header file.
+    */
+   public static final int LEGACY_BLOCK_SIZE = 400;
+   
+   /**
+    * The character set of the strings of a new database.
+    */
+   public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+   
+   /**
+    * The number of blocks by which a file is extended, unless
+    * another size is set.
+    */
+   public static final int DEFAULT_EXTENT_SIZE = 16;
+   
+   private static final int HEADER_MAGIC = 0x53444248; // "SDBH"
+   
    private File dbDirectory;
    private boolean isNew;
-   private Map<String,FileChannel> openFiles = new HashMap<String,FileChannel>();
+   private Charset charset;
+   private ConcurrentMap<String,FileChannel> openFiles = new ConcurrentHashMap<String,FileChannel>();
+   private ConcurrentMap<String,FileLength> lengths = new ConcurrentHashMap<String,FileLength>();
+   private volatile int extentSize = DEFAULT_EXTENT_SIZE;
+   // files written since last forced, mapped to whether their size changed
+   private ConcurrentMap<String,Boolean> unsynced = new ConcurrentHashMap<String,Boolean>();
+   private ConcurrentMap<String,MappedFile> mappedFiles = new ConcurrentHashMap<String,MappedFile>();
+   // the storage chosen for individual files; true means mapped
+   private Map<String,Boolean> storage = new HashMap<String,Boolean>();
+   private boolean mapByDefault = false;
+   // the I/O chosen for individual files; true means direct
+   private Map<String,Boolean> directIO = new HashMap<String,Boolean>();
+   private boolean directByDefault = false;
+   private Set<FileChannel> directChannels =
+         Collections.newSetFromMap(new ConcurrentHashMap<FileChannel,Boolean>());
+   private ConcurrentMap<String,CompressedFile> compressedFiles = new ConcurrentHashMap<String,CompressedFile>();
+   // the format chosen for new files; true means compressed
+   private Map<String,Boolean> compression = new HashMap<String,Boolean>();
+   private ByteBuffer zeroBlock;
 
    /**
     * Creates a file manager for the specified database.
@@ -33,9 +156,43 @@ public class FileMgr {
     * If the folder does not exist, then a folder containing
     * an empty database is created automatically.
     * Files for all temporary tables (i.e. tables beginning with "temp") are deleted.
+    * A new database gets the default block size and character set.
     * @param dbname the name of the directory that holds the database
     */
    public FileMgr(String dbname) {
+      this(dbname, DEFAULT_BLOCK_SIZE);
+   }
+   
+   /**
+    * Creates a file manager for the specified database,
+    * as in {@link #FileMgr(String)}.
+    * If the database is new, it is created with the specified block size;
+    * otherwise the block size is read from its header file,
+    * and the specified size is ignored.
+    * In either case, {@link Page#BLOCK_SIZE} is set to the database's block size,
+    * and the character set of {@link Page} to that of the database.
+    * @param dbname the name of the directory that holds the database
+    * @param blocksize the block size of a new database, a power of 2 between 4K and 64K
+    */
+   public FileMgr(String dbname, int blocksize) {
+      this(dbname, blocksize, DEFAULT_CHARSET);
+   }
+   
+   /**
+    * Creates a file manager for the specified database,
+    * as in {@link #FileMgr(String, int)}.
+    * If the database is new, its strings are stored in the specified
+    * character set; otherwise the character set is read from its header file.
+    * A character set that encodes each character in one byte,
+    * such as US-ASCII or ISO-8859-1, lets string fields take a third
+    * of the space they take in UTF-8.
+    * @param dbname the name of the directory that holds the database
+    * @param blocksize the block size of a new database, a power of 2 between 4K and 64K
+    * @param cs the character set of a new database
+    */
+   public FileMgr(String dbname, int blocksize, Charset cs) {
+      if (!validBlockSize(blocksize))
+         throw new IllegalArgumentException("invalid block size " + blocksize);
       String homedir = System.getProperty("user.home");
       dbDirectory = new File(homedir, dbname);
       isNew = !dbDirectory.exists();
@@ -48,6 +205,24 @@ public class FileMgr {
       for (String filename : dbDirectory.list())
          if (filename.startsWith("temp"))
          new File(dbDirectory, filename).delete();
+      
+      File header = new File(dbDirectory, HEADER_FILE);
+      if (header.exists())
+         blocksize = readHeader(header);
+      else {
+         // a database without a header predates configurable block sizes,
+         // and stored its strings in the platform's character set
+         if (isNew)
+            charset = cs;
+         else {
+            blocksize = LEGACY_BLOCK_SIZE;
+            charset = Charset.defaultCharset();
+         }
+         writeHeader(header, blocksize);
+      }
+      Page.BLOCK_SIZE = blocksize;
+      Page.setCharset(charset);
+      zeroBlock = DirectIO.allocate(blocksize);
    }
 
    /**
@@ -55,14 +230,30 @@ public class FileMgr {
     * @param blk a reference to a disk block
     * @param bb  the bytebuffer
     */
-   synchronized void read(Block blk, ByteBuffer bb) {
+   void read(Block blk, ByteBuffer bb) {
+      FileChannel fc = null;
       try {
          bb.clear();
-         FileChannel fc = getFile(blk.fileName());
-         fc.read(bb, blk.number() * BLOCK_SIZE);
+         fc = getFile(blk.fileName());
+         CompressedFile cf = compressedFiles.get(blk.fileName());
+         if (cf != null) {
+            cf.read(fc, blk.number(), bb);
+            return;
+         }
+         long pos = (long) blk.number() * BLOCK_SIZE;
+         MappedFile mf = mappedFiles.get(blk.fileName());
+         if (mf != null && mf.read(pos, bb))
+            return;
+         while (bb.hasRemaining()) {
+            int n = fc.read(bb, pos + bb.position());
+            if (n < 0)
+               break;  // the rest of the block is beyond the end of the file
+         }
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot read block " + blk);
+         if (!reopened(blk.fileName(), fc, e))
+            throw new RuntimeException("cannot read block " + blk);
+         read(blk, bb);
       }
    }
 
@@ -71,17 +262,113 @@ public class FileMgr {
     * @param blk a reference to a disk block
     * @param bb  the bytebuffer
     */
-   synchronized void write(Block blk, ByteBuffer bb) {
+   void write(Block blk, ByteBuffer bb) {
+      FileChannel fc = null;
       try {
          bb.rewind();
-         FileChannel fc = getFile(blk.fileName());
-         fc.write(bb, blk.number() * BLOCK_SIZE);
+         fc = getFile(blk.fileName());
+         long pos = (long) blk.number() * BLOCK_SIZE;
+         MappedFile mf = mappedFiles.get(blk.fileName());
+         CompressedFile cf = compressedFiles.get(blk.fileName());
+         if (cf != null)
+            cf.write(fc, blk.number(), bb);
+         else if (mf == null || !mf.write(pos, bb))
+            while (bb.hasRemaining())
+               fc.write(bb, pos + bb.position());
+         written(blk.fileName(), false);
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot write block" + blk);
+         if (!reopened(blk.fileName(), fc, e))
+            throw new RuntimeException("cannot write block" + blk);
+         write(blk, bb);
       }
    }
 
+   /**
+    * Reads the contents of consecutive disk blocks into bytebuffers,
+    * starting with the specified block.
+    * The blocks are read by a single scattering read,
+    * unless the file is memory-mapped or compressed.
+    * @param first a reference to the first disk block
+    * @param bbs the bytebuffers, one per block
+    */
+   void readBlocks(Block first, ByteBuffer[] bbs) {
+      FileChannel fc = null;
+      try {
+         fc = getFile(first.fileName());
+         if (compressedFiles.containsKey(first.fileName())) {
+            for (int i = 0; i < bbs.length; i++)
+               read(new Block(first.fileName(), first.number() + i), bbs[i]);
+            return;
+         }
+         long pos = (long) first.number() * BLOCK_SIZE;
+         MappedFile mf = mappedFiles.get(first.fileName());
+         if (mf != null) {
+            for (int i = 0; i < bbs.length; i++)
+               if (!mf.read(pos + (long) i * BLOCK_SIZE, bbs[i]))
+                  read(new Block(first.fileName(), first.number() + i), bbs[i]);
+            return;
+         }
+         for (ByteBuffer bb : bbs)
+            bb.clear();
+         // the scattering read uses the channel's position,
+         // which the position and the read must agree on
+         synchronized (fc) {
+            fc.position(pos);
+            while (bbs[bbs.length - 1].hasRemaining())
+               if (fc.read(bbs) < 0)
+                  break;  // the remaining blocks are beyond the end of the file
+         }
+      }
+      catch (IOException e) {
+         if (!reopened(first.fileName(), fc, e))
+            throw new RuntimeException("cannot read blocks from " + first);
+         readBlocks(first, bbs);
+      }
+   }
+   
+   /**
+    * Writes the contents of bytebuffers into consecutive disk blocks,
+    * starting with the specified block.
+    * The blocks are written by a single gathering write,
+    * unless the file is memory-mapped or compressed.
+    * @param first a reference to the first disk block
+    * @param bbs the bytebuffers, one per block
+    */
+   void writeBlocks(Block first, ByteBuffer[] bbs) {
+      FileChannel fc = null;
+      try {
+         fc = getFile(first.fileName());
+         if (compressedFiles.containsKey(first.fileName())) {
+            for (int i = 0; i < bbs.length; i++)
+               write(new Block(first.fileName(), first.number() + i), bbs[i]);
+            return;
+         }
+         long pos = (long) first.number() * BLOCK_SIZE;
+         MappedFile mf = mappedFiles.get(first.fileName());
+         if (mf != null) {
+            for (int i = 0; i < bbs.length; i++)
+               if (!mf.write(pos + (long) i * BLOCK_SIZE, bbs[i]))
+                  write(new Block(first.fileName(), first.number() + i), bbs[i]);
+            written(first.fileName(), false);
+            return;
+         }
+         for (ByteBuffer bb : bbs)
+            bb.rewind();
+         synchronized (fc) {
+            fc.position(pos);
+            while (bbs[bbs.length - 1].hasRemaining())
+               fc.write(bbs);
+         }
+         written(first.fileName(), false);
+      }
+      catch (IOException e) {
+         if (!reopened(first.fileName(), fc, e))
+            throw new RuntimeException("cannot write blocks to " + first);
+         writeBlocks(first, bbs);
+      }
+   }
+   
    /**
     * Appends the contents of a bytebuffer to the end
     * of the specified file.
@@ -89,11 +376,25 @@ public class FileMgr {
     * @param bb  the bytebuffer
     * @return a reference to the newly-created block.
     */
-   synchronized Block append(String filename, ByteBuffer bb) {
-      int newblknum = size(filename);
-      Block blk = new Block(filename, newblknum);
-      write(blk, bb);
-      return blk;
+   Block append(String filename, ByteBuffer bb) {
+      FileLength len = length(filename);
+      synchronized (len) {
+         int newblknum = len.blocks;
+         boolean extended = false;
+         // a compressed file grows as its blocks are written
+         if (newblknum >= len.allocated && !compressedFiles.containsKey(filename)) {
+            allocate(filename, len, newblknum + extentSize);
+            extended = true;
+         }
+         Block blk = new Block(filename, newblknum);
+         write(blk, bb);
+         len.blocks = newblknum + 1;
+         written(filename, extended);
+         MappedFile mf = mappedFiles.get(filename);
+         if (mf != null)
+            extendMapping(mf, filename, (long) (newblknum + 1) * BLOCK_SIZE);
+         return blk;
+      }
    }
 
    /**
@@ -101,16 +402,185 @@ public class FileMgr {
     * @param filename the name of the file
     * @return the number of blocks in the file
     */
-   public synchronized int size(String filename) {
+   public int size(String filename) {
+      return length(filename).blocks;
+   }
+   
+   /**
+    * Sets the number of blocks by which a file is extended
+    * when an append reaches the end of its allocated space.
+    * A size of 1 extends files a block at a time.
+    * @param blocks the number of blocks in an extent
+    */
+   public void setExtentSize(int blocks) {
+      if (blocks < 1)
+         throw new IllegalArgumentException("invalid extent size " + blocks);
+      extentSize = blocks;
+   }
+
+   /**
+    * Forces the blocks written to the specified file onto the disk.
+    * The method returns immediately if nothing has been
+    * written to the file since it was last forced.
+    * If another thread is forcing the file, the method first waits
+    * for that force to complete, since the writes it covers are
+    * not on disk before then.
+    * @param filename the name of the file
+    */
+   public void force(String filename) {
+      if (!unsynced.containsKey(filename))
+         return;
+      synchronized (length(filename).forceLock) {
+         Boolean grown = unsynced.remove(filename);
+         if (grown == null)
+            return;
+         MappedFile mf = mappedFiles.get(filename);
+         if (mf != null)
+            mf.force();
+         force(filename, grown);
+      }
+   }
+   
+   /**
+    * Forces the blocks written to all files onto the disk.
+    * This method is called when the buffers are flushed at
+    * commit, rollback and checkpoint.
+    */
+   public void forceAll() {
+      for (String filename : unsynced.keySet())
+         force(filename);
+   }
+   
+   /**
+    * Returns true if everything written to the specified file
+    * has been forced onto the disk. This is always true of
+    * temporary files, whose writes are never forced.
+    * @param filename the name of the file
+    * @return true if forcing the file has nothing to do
+    */
+   public boolean isSynced(String filename) {
+      return !unsynced.containsKey(filename);
+   }
+   
+   /**
+    * Chooses whether the specified file is memory-mapped,
+    * overriding the database's default.
+    * The choice should be made before the file is used,
+    * or while no transaction is using it.
+    * @param filename the name of the file
+    * @param mapped true if the file should be mapped
+    */
+   public synchronized void setMapped(String filename, boolean mapped) {
+      storage.put(filename, mapped);
+      reopen(filename);
+      remap(filename);
+   }
+   
+   /**
+    * Chooses whether the files of the database are memory-mapped,
+    * except for temporary files and the files whose storage
+    * has been chosen by {@link #setMapped(String, boolean)}.
+    * @param mapped true if the files should be mapped
+    */
+   public synchronized void setMappedByDefault(boolean mapped) {
+      mapByDefault = mapped;
+      for (String filename : openFiles.keySet()) {
+         reopen(filename);
+         remap(filename);
+      }
+   }
+   
+   /**
+    * Chooses whether the specified file is opened for direct I/O,
+    * overriding the database's default.
+    * The choice should be made before the file is used,
+    * or while no transaction is using it;
+    * if the file is open, it is reopened.
+    * @param filename the name of the file
+    * @param direct true if the file should bypass the page cache
+    */
+   public synchronized void setDirect(String filename, boolean direct) {
+      directIO.put(filename, direct);
+      reopen(filename);
+   }
+   
+   /**
+    * Chooses whether the files of the database are opened for direct I/O,
+    * except for temporary files, memory-mapped files, and the files whose
+    * I/O has been chosen by {@link #setDirect(String, boolean)}.
+    * Temporary files keep the page cache, since they are usually
+    * read back soon after being written.
+    * @param direct true if the files should bypass the page cache
+    */
+   public synchronized void setDirectByDefault(boolean direct) {
+      directByDefault = direct;
+      for (String filename : openFiles.keySet())
+         reopen(filename);
+   }
+   
+   /**
+    * Returns true if the specified file is currently open for direct I/O.
+    * This is false for a file that was chosen for direct I/O
+    * but does not support it.
+    * @param filename the name of the file
+    * @return true if the file bypasses the page cache
+    */
+   public boolean isDirect(String filename) {
+      FileChannel fc = openFiles.get(filename);
+      return fc != null && directChannels.contains(fc);
+   }
+   
+   /**
+    * Chooses whether the specified file is stored compressed.
+    * The choice applies only if the file does not exist yet, or is empty,
+    * when it is first opened; otherwise the file keeps its format.
+    * @param filename the name of the file
+    * @param compressed true if the file should be compressed
+    */
+   public synchronized void setCompressed(String filename, boolean compressed) {
+      compression.put(filename, compressed);
+   }
+   
+   /**
+    * Returns true if the specified file is stored compressed.
+    * @param filename the name of the file
+    * @return true if the file is compressed
+    */
+   public boolean isCompressed(String filename) {
       try {
-         FileChannel fc = getFile(filename);
-         return (int)(fc.size() / BLOCK_SIZE);
+         getFile(filename);
+         return compressedFiles.containsKey(filename);
       }
       catch (IOException e) {
          throw new RuntimeException("cannot access " + filename);
       }
    }
-
+   
+   /**
+    * Returns true if the specified file is currently memory-mapped.
+    * @param filename the name of the file
+    * @return true if the file is mapped
+    */
+   public boolean isMapped(String filename) {
+      return mappedFiles.containsKey(filename);
+   }
+   
+   /**
+    * Returns the size of the database's blocks.
+    * @return the block size in bytes
+    */
+   public int blockSize() {
+      return Page.BLOCK_SIZE;
+   }
+   
+   /**
+    * Returns the character set in which the database's strings are stored.
+    * @return the database's character set
+    */
+   public Charset charset() {
+      return charset;
+   }
+   
    /**
     * Returns a boolean indicating whether the file manager
     * had to create a new database directory.
@@ -120,23 +590,286 @@ public class FileMgr {
       return isNew;
    }
 
+   private void written(String filename, boolean grown) {
+      if (filename.startsWith("temp"))
+         return;
+      if (grown)
+         unsynced.put(filename, true);
+      else
+         unsynced.putIfAbsent(filename, false);
+   }
+   
+   /**
+    * Maps or unmaps the specified file, if it is open,
+    * according to the storage chosen for it.
+    * The caller must hold the lock on this object.
+    */
+   private void remap(String filename) {
+      FileChannel fc = openFiles.get(filename);
+      if (fc == null)
+         return;
+      boolean mapped = mapped(filename);
+      try {
+         if (mapped && !mappedFiles.containsKey(filename))
+            mappedFiles.put(filename, new MappedFile(fc));
+         else if (!mapped && mappedFiles.containsKey(filename))
+            // writes made through the mapping must be on disk
+            // before the file is accessed through its channel
+            mappedFiles.remove(filename).force();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot map " + filename);
+      }
+   }
+   
+   private boolean mapped(String filename) {
+      if (compressedFiles.containsKey(filename))
+         return false;
+      Boolean choice = storage.get(filename);
+      return (choice != null) ? choice : mapByDefault && !filename.startsWith("temp");
+   }
+   
+   private boolean direct(String filename) {
+      if (compressedFiles.containsKey(filename))
+         return false;
+      Boolean choice = directIO.get(filename);
+      if (choice != null)
+         return choice;
+      return directByDefault && !filename.startsWith("temp") && !mapped(filename);
+   }
+   
+   /**
+    * Reopens the specified file, if it is open and its channel
+    * does not do the I/O chosen for it.
+    * A thread whose I/O fails because the old channel is closed
+    * retries it on the new channel.
+    * The caller must hold the lock on this object.
+    */
+   private void reopen(String filename) {
+      FileChannel fc = openFiles.get(filename);
+      if (fc == null || directChannels.contains(fc) == direct(filename))
+         return;
+      try {
+         openFiles.put(filename, open(filename));
+         directChannels.remove(fc);
+         fc.close();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot reopen " + filename);
+      }
+   }
+   
+   /**
+    * Decides whether an I/O on the specified file that failed
+    * on the specified channel should be retried.
+    * It should be if the file has been reopened meanwhile,
+    * or if another thread closed the channel by being interrupted,
+    * in which case the file is reopened when next accessed.
+    * If the failure is that of direct I/O, the file is reopened
+    * for buffered I/O, since the platform may reject direct transfers
+    * that it was expected to support, such as on a page
+    * whose memory is not aligned.
+    * An I/O interrupted by its thread is not retried.
+    * @param filename the name of the file
+    * @param failed the channel on which the I/O failed, or null
+    * @param e the failure
+    * @return true if the I/O should be retried
+    */
+   private synchronized boolean reopened(String filename, FileChannel failed, IOException e) {
+      if (failed == null || e instanceof ClosedByInterruptException)
+         return false;
+      if (openFiles.get(filename) != failed || !failed.isOpen())
+         return true;
+      if (!directChannels.contains(failed))
+         return false;
+      directIO.put(filename, false);
+      reopen(filename);
+      return true;
+   }
+   
+   private void extendMapping(MappedFile mf, String filename, long filesize) {
+      try {
+         mf.extend(getFile(filename), filesize);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot map " + filename);
+      }
+   }
+   
+   /**
+    * The length of a file, in blocks.
+    * Appends to the file synchronize on this object,
+    * and forces of the file on its force lock.
+    */
+   private static class FileLength {
+      volatile int blocks;  // the blocks appended so far
+      int allocated;        // the blocks the file has room for on disk
+      final Object forceLock = new Object();
+      
+      FileLength(int blocks) {
+         this.blocks = blocks;
+         this.allocated = blocks;
+      }
+   }
+   
+   private FileLength length(String filename) {
+      FileLength len = lengths.get(filename);
+      if (len != null)
+         return len;
+      try {
+         FileChannel fc = getFile(filename);
+         CompressedFile cf = compressedFiles.get(filename);
+         int blocks = (cf != null) ? cf.size() : (int) (fc.size() / BLOCK_SIZE);
+         FileLength newlen = new FileLength(blocks);
+         len = lengths.putIfAbsent(filename, newlen);
+         return (len == null) ? newlen : len;
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot access " + filename);
+      }
+   }
+   
+   /**
+    * Extends the file on disk so that it has room for the specified
+    * number of blocks. Only the last block is written, with zeros,
+    * which sets the size of the file.
+    * The caller must hold the lock on the file's length.
+    */
+   private void allocate(String filename, FileLength len, int blocks) {
+      FileChannel fc = null;
+      try {
+         fc = getFile(filename);
+         // the block is written whole, as direct I/O requires
+         ByteBuffer zero = zeroBlock.duplicate();
+         long pos = (long) (blocks - 1) * BLOCK_SIZE;
+         while (zero.hasRemaining())
+            fc.write(zero, pos + zero.position());
+         len.allocated = blocks;
+      }
+      catch (IOException e) {
+         if (!reopened(filename, fc, e))
+            throw new RuntimeException("cannot extend " + filename);
+         allocate(filename, len, blocks);
+      }
+   }
+   
+   private void force(String filename, boolean metadata) {
+      FileChannel fc = null;
+      try {
+         fc = getFile(filename);
+         CompressedFile cf = compressedFiles.get(filename);
+         if (cf != null)
+            cf.force(fc);
+         else
+            // the file size is metadata, so it is forced only if it changed
+            fc.force(metadata);
+      }
+      catch (IOException e) {
+         if (!reopened(filename, fc, e))
+            throw new RuntimeException("cannot force " + filename);
+         force(filename, metadata);
+      }
+   }
+   
+   private int readHeader(File header) {
+      try {
+         RandomAccessFile f = new RandomAccessFile(header, "r");
+         try {
+            if (f.readInt() != HEADER_MAGIC)
+               throw new RuntimeException("invalid header in " + header);
+            int blocksize = f.readInt();
+            // the size becomes that of every page, so a damaged header is refused
+            if (blocksize != LEGACY_BLOCK_SIZE && !validBlockSize(blocksize))
+               throw new RuntimeException("invalid block size " + blocksize + " in " + header);
+            // the character set was not recorded by earlier versions
+            if (f.getFilePointer() < f.length())
+               charset = Charset.forName(f.readUTF());
+            else
+               charset = Charset.defaultCharset();
+            return blocksize;
+         }
+         finally {
+            f.close();
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + header);
+      }
+   }
+   
+   private static boolean validBlockSize(int blocksize) {
+      return blocksize >= MIN_BLOCK_SIZE && blocksize <= MAX_BLOCK_SIZE
+            && Integer.bitCount(blocksize) == 1;
+   }
+   
+   private void writeHeader(File header, int blocksize) {
+      try {
+         RandomAccessFile f = new RandomAccessFile(header, "rws");
+         try {
+            f.writeInt(HEADER_MAGIC);
+            f.writeInt(blocksize);
+            f.writeUTF(charset.name());
+         }
+         finally {
+            f.close();
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot write " + header);
+      }
+   }
+   
    /**
     * Returns the file channel for the specified filename.
     * The file channel is stored in a map keyed on the filename.
     * If the file is not open, then it is opened and the file channel
     * is added to the map.
+    * A channel is also reopened if it was closed, which happens when
+    * a thread is interrupted during I/O on it.
     * @param filename the specified filename
     * @return the file channel associated with the open file.
     * @throws IOException
     */
    private FileChannel getFile(String filename) throws IOException {
       FileChannel fc = openFiles.get(filename);
-      if (fc == null) {
-         File dbTable = new File(dbDirectory, filename);
-         RandomAccessFile f = new RandomAccessFile(dbTable, "rws");
-         fc = f.getChannel();
-         openFiles.put(filename, fc);
+      if (fc != null && fc.isOpen())
+         return fc;
+      synchronized (this) {
+         fc = openFiles.get(filename);
+         if (fc == null || !fc.isOpen()) {
+            if (fc != null)
+               directChannels.remove(fc);
+            fc = open(filename);
+            openFiles.put(filename, fc);
+            remap(filename);
+         }
+         return fc;
+      }
+   }
+   
+   /**
+    * Opens the specified file for the I/O chosen for it,
+    * and loads its map if it is compressed.
+    * The caller must hold the lock on this object.
+    */
+   private FileChannel open(String filename) throws IOException {
+      File dbTable = new File(dbDirectory, filename);
+      if (!compressedFiles.containsKey(filename)) {
+         // the format of a file is given by whether it has a map
+         File mapFile = new File(dbDirectory, filename + CompressedFile.MAP_SUFFIX);
+         Boolean choice = compression.get(filename);
+         if (mapFile.exists()
+               || (choice != null && choice && dbTable.length() == 0))
+            compressedFiles.put(filename, new CompressedFile(mapFile));
+      }
+      if (direct(filename)) {
+         FileChannel fc = DirectIO.open(dbTable, BLOCK_SIZE);
+         if (fc != null) {
+            directChannels.add(fc);
+            return fc;
+         }
       }
-      return fc;
+      RandomAccessFile f = new RandomAccessFile(dbTable, "rw");
+      return f.getChannel();
    }
 }
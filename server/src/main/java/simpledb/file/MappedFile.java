@@ -0,0 +1,157 @@
+package simpledb.file;
+
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The memory mapping of a file whose blocks are read and written
+ * through memory instead of through its file channel.
+ * The file is mapped in extents, each of which covers a range
+ * of whole blocks. The first extent is small and each following
+ * extent is twice as large as the previous one, up to a maximum,
+ * so a small table is mapped as well as a large one
+ * without mapping a large number of regions.
+ * <p>
+ * An extent is mapped only once the file covers all of it,
+ * because mapping beyond the end of a file would extend it.
+ * The blocks at the end of the file that do not fill an extent
+ * are therefore not mapped, and must be accessed through the channel;
+ * they are mapped when appends make the file grow far enough.
+ * <p>
+ * Changes written through a mapping reach the disk only when
+ * the mapping is forced, so the file manager calls
+ * {@link #force()} whenever it forces the file.
+ */
+class MappedFile {
+   private static final int FIRST_EXTENT_BLOCKS = 16;
+   private static final long MAX_EXTENT_BYTES = 64L * 1024 * 1024;
+
+   private volatile Extents extents = new Extents(new long[0], new MappedByteBuffer[0], 0);
+   private Set<Integer> dirty =
+         Collections.newSetFromMap(new ConcurrentHashMap<Integer,Boolean>());
+
+   /**
+    * The extents mapped so far.
+    * The object is immutable, so that readers see a consistent
+    * set of extents without locking.
+    */
+   private static class Extents {
+      long[] starts;
+      MappedByteBuffer[] buffers;
+      long end;
+
+      Extents(long[] starts, MappedByteBuffer[] buffers, long end) {
+         this.starts = starts;
+         this.buffers = buffers;
+         this.end = end;
+      }
+   }
+
+   /**
+    * Maps the specified file as far as its current size allows.
+    * @param fc the channel of the file
+    * @throws IOException
+    */
+   MappedFile(FileChannel fc) throws IOException {
+      extend(fc, fc.size());
+   }
+
+   /**
+    * Copies the block at the specified position into the bytebuffer,
+    * if the block is mapped.
+    * @param pos the position of the block in the file
+    * @param bb the bytebuffer
+    * @return false if the block is not mapped
+    */
+   boolean read(long pos, ByteBuffer bb) {
+      ByteBuffer src = block(pos, extents);
+      if (src == null)
+         return false;
+      bb.clear();
+      bb.put(src);
+      return true;
+   }
+
+   /**
+    * Copies the bytebuffer into the block at the specified position,
+    * if the block is mapped.
+    * @param pos the position of the block in the file
+    * @param bb the bytebuffer
+    * @return false if the block is not mapped
+    */
+   boolean write(long pos, ByteBuffer bb) {
+      Extents e = extents;
+      ByteBuffer dst = block(pos, e);
+      if (dst == null)
+         return false;
+      bb.rewind();
+      dst.put(bb);
+      dirty.add(extentOf(pos, e));
+      return true;
+   }
+
+   /**
+    * Maps the extents that a file of the specified size covers completely.
+    * @param fc the channel of the file
+    * @param filesize the size of the file in bytes
+    * @throws IOException
+    */
+   synchronized void extend(FileChannel fc, long filesize) throws IOException {
+      Extents e = extents;
+      long[] starts = e.starts;
+      MappedByteBuffer[] buffers = e.buffers;
+      long end = e.end;
+      long len = extentSize(buffers.length);
+      while (end + len <= filesize) {
+         starts = Arrays.copyOf(starts, starts.length + 1);
+         buffers = Arrays.copyOf(buffers, buffers.length + 1);
+         starts[starts.length - 1] = end;
+         buffers[buffers.length - 1] = fc.map(FileChannel.MapMode.READ_WRITE, end, len);
+         end += len;
+         len = extentSize(buffers.length);
+      }
+      if (end != e.end)
+         extents = new Extents(starts, buffers, end);
+   }
+
+   /**
+    * Forces the extents that have been written since they were last
+    * forced onto the disk.
+    */
+   void force() {
+      MappedByteBuffer[] buffers = extents.buffers;
+      for (Integer i : dirty) {
+         dirty.remove(i);
+         buffers[i].force();
+      }
+   }
+
+   private ByteBuffer block(long pos, Extents e) {
+      if (pos + BLOCK_SIZE > e.end)
+         return null;
+      int i = extentOf(pos, e);
+      ByteBuffer buf = e.buffers[i].duplicate();
+      int offset = (int) (pos - e.starts[i]);
+      buf.limit(offset + BLOCK_SIZE);
+      buf.position(offset);
+      return buf;
+   }
+
+   private static int extentOf(long pos, Extents e) {
+      int i = Arrays.binarySearch(e.starts, pos);
+      return (i >= 0) ? i : -i - 2;
+   }
+
+   private static long extentSize(int n) {
+      long maxblocks = Math.max(1, MAX_EXTENT_BYTES / BLOCK_SIZE);
+      long blocks = (n >= 30) ? maxblocks : Math.min((long) FIRST_EXTENT_BLOCKS << n, maxblocks);
+      return blocks * BLOCK_SIZE;
+   }
+}
@@ -3,6 +3,7 @@ package simpledb.file;
 import simpledb.server.SimpleDB;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * The contents of a disk block in memory.
@@ -33,16 +34,37 @@ import java.nio.charset.Charset;
  * p3.read(blk);
  * String s = p3.getString(20);
  * </pre>
+ * <p>
+ * Pages are shared by concurrent threads.
+ * Each page has a version-stamped latch:
+ * the methods that modify the page take it exclusively,
+ * which advances its version, while getInt and getString
+ * read without taking any lock and then check that the
+ * version did not change, so readers of a page that is not
+ * being modified never block each other.
+ * All accesses use absolute offsets, so the page has no
+ * shared position to protect, and no method of a page
+ * synchronizes on it.
+ * <p>
+ * Strings are encoded in the character set of the database,
+ * which is stored in its header file.
+ * A string can be compared with, and hashed, directly
+ * from its bytes on the page, so that a scan testing a
+ * field against a constant need not create a String
+ * for each record.
  * @author Edward Sciore
  */
 public class Page {
    /**
     * The number of bytes in a block.
-    * This value is set unreasonably low, so that it is easier
-    * to create and test databases having a lot of blocks.
-    * A more realistic value would be 4K.
+    * The block size is chosen when a database is created,
+    * and is stored in the database's header file.
+    * The {@link FileMgr} sets this value when it opens the database,
+    * before any page is created; it must not be changed otherwise.
+    * Databases created before the header file existed
+    * use the original size of 400 bytes.
     */
-   public static final int BLOCK_SIZE = 400;
+   public static int BLOCK_SIZE = 400;
    
    /**
     * The size of an integer in bytes.
@@ -51,22 +73,70 @@ public class Page {
     */
    public static final int INT_SIZE = Integer.SIZE / Byte.SIZE;
    
+   private static Charset charset = Charset.defaultCharset();
+   private static int bytesPerChar = maxBytesPerChar(charset);
+   
    /**
     * The maximum size, in bytes, of a string of length n.
     * A string is represented as the encoding of its characters,
     * preceded by an integer denoting the number of bytes in this encoding.
-    * If the JVM uses the US-ASCII encoding, then each char
+    * If the database uses the US-ASCII encoding, then each char
     * is stored in one byte, so a string of n characters
-    * has a size of 4+n bytes.
+    * has a size of 4+n bytes; in UTF-8, each char takes
+    * at most 3 bytes.
     * @param n the size of the string
     * @return the maximum number of bytes required to store a string of size n
     */
    public static final int STR_SIZE(int n) {
-      float bytesPerChar = Charset.defaultCharset().newEncoder().maxBytesPerChar();
-      return INT_SIZE + (n * (int)bytesPerChar);
+      return INT_SIZE + (n * bytesPerChar);
+   }
+   
+   /**
+    * Returns the character set in which strings are encoded.
+    * @return the database's character set
+    */
+   public static Charset charset() {
+      return charset;
+   }
+   
+   /**
+    * Sets the character set in which strings are encoded.
+    * The {@link FileMgr} calls this method when it opens
+    * the database, as it does for {@link #BLOCK_SIZE}.
+    * @param cs the database's character set
+    */
+   static void setCharset(Charset cs) {
+      charset = cs;
+      bytesPerChar = maxBytesPerChar(cs);
+   }
+   
+   /**
+    * Encodes a string in the database's character set,
+    * for use with {@link #stringEquals(int, byte[])},
+    * {@link #compareString(int, byte[])} and {@link #hash(byte[])}.
+    * @param s the string
+    * @return the encoded bytes, without the length
+    */
+   public static byte[] encode(String s) {
+      return s.getBytes(charset);
+   }
+   
+   /**
+    * Returns the hash code of an encoded string.
+    * It is the same as the value that {@link #hashString(int)}
+    * returns for the string stored on a page.
+    * @param encoded the encoded string
+    * @return the hash code
+    */
+   public static int hash(byte[] encoded) {
+      int h = 0;
+      for (int i = 0; i < encoded.length; i++)
+         h = 31 * h + encoded[i];
+      return h;
    }
    
-   private ByteBuffer contents = ByteBuffer.allocateDirect(BLOCK_SIZE);
+   private ByteBuffer contents;
+   private StampedLock latch = new StampedLock();
    private FileMgr filemgr = SimpleDB.fileMgr();
    
    /**
@@ -81,22 +151,47 @@ public class Page {
     * {@link simpledb.server.SimpleDB#initFileLogAndBufferMgr(String)}
     * is called first.
     */
-   public Page() {}
+   public Page() {
+      this(DirectIO.allocate(BLOCK_SIZE));
+   }
+   
+   /**
+    * Creates a page whose contents are held in the specified frame,
+    * which is a BLOCK_SIZE slice of a {@link PageArena}.
+    * @param frame the memory holding the contents of the page
+    */
+   Page(ByteBuffer frame) {
+      contents = frame;
+   }
    
    /**
     * Populates the page with the contents of the specified disk block. 
     * @param blk a reference to a disk block
     */
-   public synchronized void read(Block blk) {
-      filemgr.read(blk, contents);
+   public void read(Block blk) {
+      long stamp = latch.writeLock();
+      try {
+         filemgr.read(blk, contents);
+      }
+      finally {
+         latch.unlockWrite(stamp);
+      }
    }
    
    /**
     * Writes the contents of the page to the specified disk block.
+    * Concurrent writes of the same page are allowed,
+    * so each gets its own view of the contents.
     * @param blk a reference to a disk block
     */
-   public synchronized void write(Block blk) {
-      filemgr.write(blk, contents);
+   public void write(Block blk) {
+      long stamp = latch.readLock();
+      try {
+         filemgr.write(blk, contents.duplicate());
+      }
+      finally {
+         latch.unlockRead(stamp);
+      }
    }
    
    /**
@@ -104,20 +199,112 @@ public class Page {
     * @param filename the name of the file
     * @return the reference to the newly-created disk block
     */
-   public synchronized Block append(String filename) {
-      return filemgr.append(filename, contents);
+   public Block append(String filename) {
+      long stamp = latch.readLock();
+      try {
+         return filemgr.append(filename, contents.duplicate());
+      }
+      finally {
+         latch.unlockRead(stamp);
+      }
+   }
+   
+   /**
+    * Populates the specified pages with the contents of consecutive
+    * disk blocks, starting with the specified block,
+    * using a single scattering read.
+    * The pages are locked in array order.
+    * @param first a reference to the first disk block
+    * @param pages the pages to be read, one per block
+    */
+   public static void readBlocks(Block first, Page[] pages) {
+      long[] stamps = new long[pages.length];
+      ByteBuffer[] bbs = new ByteBuffer[pages.length];
+      for (int i = 0; i < pages.length; i++) {
+         stamps[i] = pages[i].latch.writeLock();
+         bbs[i] = pages[i].contents;
+      }
+      try {
+         pages[0].filemgr.readBlocks(first, bbs);
+      }
+      finally {
+         for (int i = 0; i < pages.length; i++)
+            pages[i].latch.unlockWrite(stamps[i]);
+      }
+   }
+   
+   /**
+    * Writes the contents of the specified pages to consecutive
+    * disk blocks, starting with the specified block,
+    * using a single gathering write.
+    * The pages are locked in array order.
+    * @param first a reference to the first disk block
+    * @param pages the pages to be written, one per block
+    */
+   public static void writeBlocks(Block first, Page[] pages) {
+      long[] stamps = new long[pages.length];
+      ByteBuffer[] bbs = new ByteBuffer[pages.length];
+      for (int i = 0; i < pages.length; i++) {
+         stamps[i] = pages[i].latch.readLock();
+         bbs[i] = pages[i].contents.duplicate();
+      }
+      try {
+         pages[0].filemgr.writeBlocks(first, bbs);
+      }
+      finally {
+         for (int i = 0; i < pages.length; i++)
+            pages[i].latch.unlockRead(stamps[i]);
+      }
+   }
+   
+   /**
+    * Replaces the contents of this page with those of the specified page.
+    * @param p the page to copy
+    */
+   public void copyFrom(Page p) {
+      ByteBuffer src = p.contents.duplicate();
+      ByteBuffer dst = contents.duplicate();
+      long srcstamp = p.latch.readLock();
+      try {
+         long stamp = latch.writeLock();
+         try {
+            src.clear();
+            dst.clear();
+            dst.put(src);
+         }
+         finally {
+            latch.unlockWrite(stamp);
+         }
+      }
+      finally {
+         p.latch.unlockRead(srcstamp);
+      }
    }
    
    /**
     * Returns the integer value at a specified offset of the page.
     * If an integer was not stored at that location, 
     * the behavior of the method is unpredictable.
+    * The value is read optimistically, without locking;
+    * the read is retried under the read lock only if
+    * the page was modified while it was being read.
     * @param offset the byte offset within the page
     * @return the integer value at that offset
     */
-   public synchronized int getInt(int offset) {
-      contents.position(offset);
-      return contents.getInt();
+   public int getInt(int offset) {
+      long stamp = latch.tryOptimisticRead();
+      if (stamp != 0) {
+         int val = contents.getInt(offset);
+         if (latch.validate(stamp))
+            return val;
+      }
+      stamp = latch.readLock();
+      try {
+         return contents.getInt(offset);
+      }
+      finally {
+         latch.unlockRead(stamp);
+      }
    }
    
    /**
@@ -125,24 +312,41 @@ public class Page {
     * @param offset the byte offset within the page
     * @param val the integer to be written to the page
     */
-   public synchronized void setInt(int offset, int val) {
-      contents.position(offset);
-      contents.putInt(val);
+   public void setInt(int offset, int val) {
+      long stamp = latch.writeLock();
+      try {
+         contents.putInt(offset, val);
+      }
+      finally {
+         latch.unlockWrite(stamp);
+      }
    }
    
    /**
     * Returns the string value at the specified offset of the page.
     * If a string was not stored at that location,
     * the behavior of the method is unpredictable.
+    * Like {@link #getInt(int)}, the value is read optimistically.
     * @param offset the byte offset within the page
     * @return the string value at that offset
     */
-   public synchronized String getString(int offset) {
-      contents.position(offset);
-      int len = contents.getInt();
-      byte[] byteval = new byte[len];
-      contents.get(byteval);
-      return new String(byteval);
+   public String getString(int offset) {
+      long stamp = latch.tryOptimisticRead();
+      if (stamp != 0) {
+         int len = contents.getInt(offset);
+         if (validLength(offset, len)) {
+            String val = readString(offset, len);
+            if (latch.validate(stamp))
+               return val;
+         }
+      }
+      stamp = latch.readLock();
+      try {
+         return readString(offset, contents.getInt(offset));
+      }
+      finally {
+         latch.unlockRead(stamp);
+      }
    }
    
    /**
@@ -150,10 +354,146 @@ public class Page {
     * @param offset the byte offset within the page
     * @param val the string to be written to the page
     */
-   public synchronized void setString(int offset, String val) {
-      contents.position(offset);
-      byte[] byteval = val.getBytes();
-      contents.putInt(byteval.length);
-      contents.put(byteval);
+   public void setString(int offset, String val) {
+      byte[] byteval = encode(val);
+      long stamp = latch.writeLock();
+      try {
+         contents.putInt(offset, byteval.length);
+         int pos = offset + INT_SIZE;
+         for (int i = 0; i < byteval.length; i++)
+            contents.put(pos + i, byteval[i]);
+      }
+      finally {
+         latch.unlockWrite(stamp);
+      }
+   }
+   
+   /**
+    * Returns true if the string at the specified offset
+    * of the page equals the specified encoded string.
+    * @param offset the byte offset within the page
+    * @param encoded the string, as returned by {@link #encode(String)}
+    * @return true if the strings are equal
+    */
+   public boolean stringEquals(int offset, byte[] encoded) {
+      long stamp = latch.tryOptimisticRead();
+      if (stamp != 0) {
+         int len = contents.getInt(offset);
+         if (validLength(offset, len)) {
+            boolean val = (len == encoded.length) && compareBytes(offset, len, encoded) == 0;
+            if (latch.validate(stamp))
+               return val;
+         }
+      }
+      stamp = latch.readLock();
+      try {
+         int len = contents.getInt(offset);
+         return (len == encoded.length) && compareBytes(offset, len, encoded) == 0;
+      }
+      finally {
+         latch.unlockRead(stamp);
+      }
+   }
+   
+   /**
+    * Compares the string at the specified offset of the page
+    * with the specified encoded string.
+    * The strings are compared byte by byte, as unsigned values.
+    * In UTF-8 this is the order of the strings' code points,
+    * which is the order of String.compareTo except for
+    * characters outside the Basic Multilingual Plane.
+    * @param offset the byte offset within the page
+    * @param encoded the string, as returned by {@link #encode(String)}
+    * @return a negative value, zero, or a positive value
+    * as the string on the page is less than, equal to,
+    * or greater than the specified string
+    */
+   public int compareString(int offset, byte[] encoded) {
+      long stamp = latch.tryOptimisticRead();
+      if (stamp != 0) {
+         int len = contents.getInt(offset);
+         if (validLength(offset, len)) {
+            int val = compareBytes(offset, len, encoded);
+            if (latch.validate(stamp))
+               return val;
+         }
+      }
+      stamp = latch.readLock();
+      try {
+         return compareBytes(offset, contents.getInt(offset), encoded);
+      }
+      finally {
+         latch.unlockRead(stamp);
+      }
+   }
+   
+   /**
+    * Returns the hash code of the string at the specified offset
+    * of the page, computed from its encoded bytes.
+    * @param offset the byte offset within the page
+    * @return the hash code
+    * @see #hash(byte[])
+    */
+   public int hashString(int offset) {
+      long stamp = latch.tryOptimisticRead();
+      if (stamp != 0) {
+         int len = contents.getInt(offset);
+         if (validLength(offset, len)) {
+            int val = hashBytes(offset, len);
+            if (latch.validate(stamp))
+               return val;
+         }
+      }
+      stamp = latch.readLock();
+      try {
+         return hashBytes(offset, contents.getInt(offset));
+      }
+      finally {
+         latch.unlockRead(stamp);
+      }
+   }
+   
+   // a concurrent write can make a length read optimistically invalid
+   private boolean validLength(int offset, int len) {
+      return len >= 0 && len <= contents.capacity() - offset - INT_SIZE;
+   }
+   
+   private String readString(int offset, int len) {
+      byte[] byteval = new byte[len];
+      int pos = offset + INT_SIZE;
+      for (int i = 0; i < len; i++)
+         byteval[i] = contents.get(pos + i);
+      return new String(byteval, charset);
+   }
+   
+   private int compareBytes(int offset, int len, byte[] encoded) {
+      int pos = offset + INT_SIZE;
+      int n = Math.min(len, encoded.length);
+      for (int i = 0; i < n; i++) {
+         int cmp = (contents.get(pos + i) & 0xff) - (encoded[i] & 0xff);
+         if (cmp != 0)
+            return cmp;
+      }
+      return len - encoded.length;
+   }
+   
+   private int hashBytes(int offset, int len) {
+      int pos = offset + INT_SIZE;
+      int h = 0;
+      for (int i = 0; i < len; i++)
+         h = 31 * h + contents.get(pos + i);
+      return h;
+   }
+   
+   private static int maxBytesPerChar(Charset cs) {
+      return (int) cs.newEncoder().maxBytesPerChar();
+   }
+   
+   /**
+    * Returns the memory holding the contents of the page.
+    * @return the page's frame
+    */
+   ByteBuffer contents() {
+      return contents;
    }
 }
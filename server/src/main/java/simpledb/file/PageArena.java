@@ -0,0 +1,125 @@
+package simpledb.file;
+
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A region of memory that holds the pages of a buffer pool.
+ * Instead of allocating each page separately, the arena
+ * allocates large slabs of direct memory and slices them
+ * into page-sized frames.
+ * A frame that is released is kept for reuse, so the memory
+ * of an arena is never handed back to the JVM;
+ * resizing the buffer pool therefore creates no garbage.
+ * <p>
+ * An arena either grows a slab at a time as frames are needed,
+ * or is built over a single region of memory supplied by the caller,
+ * such as a memory-mapped file, in which case its capacity is fixed.
+ * <p>
+ * The slabs that the arena allocates are aligned as direct I/O requires,
+ * so each frame starts at a multiple of {@link DirectIO#ALIGNMENT}.
+ * Frames of memory supplied by the caller are aligned only if that memory is.
+ */
+public class PageArena {
+   /**
+    * The largest slab that an arena allocates, in bytes.
+    */
+   public static final int MAX_SLAB = 4 * 1024 * 1024;
+
+   private int framesPerSlab;
+   private List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+   private List<ByteBuffer> freeFrames = new ArrayList<ByteBuffer>();
+   private int numFrames = 0;
+
+   /**
+    * Creates an arena that allocates direct memory
+    * in slabs of the specified number of frames,
+    * or of as many frames as fit in {@link #MAX_SLAB} bytes
+    * if that is fewer. A buffer pool passes its own size,
+    * so that a small pool takes no more memory than it needs
+    * and a large pool grows by slabs of bounded size.
+    * @param framesPerSlab the number of frames in each slab
+    */
+   public PageArena(int framesPerSlab) {
+      if (framesPerSlab < 1)
+         throw new IllegalArgumentException("invalid slab size " + framesPerSlab);
+      this.framesPerSlab = Math.min(framesPerSlab, Math.max(1, MAX_SLAB / BLOCK_SIZE));
+   }
+
+   /**
+    * Creates an arena over the specified memory,
+    * which is sliced into as many frames as fit in it.
+    * The arena cannot grow beyond that.
+    * @param memory the memory that holds the frames
+    */
+   public PageArena(ByteBuffer memory) {
+      this.framesPerSlab = 0;
+      addSlab(memory.duplicate());
+   }
+
+   /**
+    * Returns a new page whose contents are held in a frame of the arena.
+    * @return a page backed by the arena
+    */
+   public synchronized Page allocate() {
+      if (freeFrames.isEmpty()) {
+         if (framesPerSlab == 0)
+            throw new IllegalStateException("page arena is full");
+         addSlab(DirectIO.allocate(framesPerSlab * BLOCK_SIZE));
+      }
+      ByteBuffer frame = freeFrames.remove(freeFrames.size() - 1);
+      return new Page(frame);
+   }
+
+   /**
+    * Returns the frame of the specified page to the arena.
+    * The page must have been allocated by this arena,
+    * and must not be used afterwards.
+    * @param p the page to release
+    */
+   public synchronized void release(Page p) {
+      freeFrames.add(p.contents());
+   }
+
+   /**
+    * Returns the number of frames in the arena.
+    * @return the number of frames
+    */
+   public synchronized int capacity() {
+      return numFrames;
+   }
+
+   /**
+    * Returns the number of frames not currently in use.
+    * @return the number of free frames
+    */
+   public synchronized int free() {
+      return freeFrames.size();
+   }
+
+   /**
+    * Returns the number of bytes of memory held by the arena.
+    * @return the size of the arena in bytes
+    */
+   public synchronized long footprint() {
+      long bytes = 0;
+      for (ByteBuffer slab : slabs)
+         bytes += slab.capacity();
+      return bytes;
+   }
+
+   private void addSlab(ByteBuffer slab) {
+      slabs.add(slab);
+      int n = slab.capacity() / BLOCK_SIZE;
+      // hand out the frames in address order
+      for (int i = n - 1; i >= 0; i--) {
+         slab.limit((i + 1) * BLOCK_SIZE);
+         slab.position(i * BLOCK_SIZE);
+         freeFrames.add(slab.slice());
+      }
+      slab.clear();
+      numFrames += n;
+   }
+}
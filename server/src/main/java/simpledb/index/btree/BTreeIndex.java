@@ -149,6 +149,11 @@ public class BTreeIndex implements Index {
     * @return the estimated traversal cost
     */
    public static int searchCost(int numblocks, int rpb) {
+      // with large blocks, a small index fits in a single leaf
+      if (numblocks <= 1)
+         return 1;
+      if (rpb < 2)
+         return numblocks;
       return 1 + (int)(Math.log(numblocks) / Math.log(rpb));
    }
 }
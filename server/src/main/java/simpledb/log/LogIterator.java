@@ -30,10 +30,14 @@ class LogIterator implements Iterator<BasicLogRecord> {
    /**
     * Determines if the current log record
     * is the earliest record in the log file.
+    * Blocks that hold no records are skipped; they occur
+    * where the file manager allocated blocks that the log
+    * never filled before the database was restarted.
     * @return true if there is an earlier record
     */
    public boolean hasNext() {
-      return currentrec>0 || blk.number()>0;
+      skipEmptyBlocks();
+      return currentrec>0;
    }
    
    /**
@@ -44,8 +48,7 @@ class LogIterator implements Iterator<BasicLogRecord> {
     * @return the next earliest log record
     */
    public BasicLogRecord next() {
-      if (currentrec == 0) 
-         moveToNextBlock();
+      skipEmptyBlocks();
       currentrec = pg.getInt(currentrec);
       return new BasicLogRecord(pg, currentrec+INT_SIZE);
    }
@@ -54,6 +57,11 @@ class LogIterator implements Iterator<BasicLogRecord> {
       throw new UnsupportedOperationException();
    }
    
+   private void skipEmptyBlocks() {
+      while (currentrec == 0 && blk.number() > 0)
+         moveToNextBlock();
+   }
+   
    /**
     * Moves to the next log block in reverse order,
     * and positions it after the last record in that block.
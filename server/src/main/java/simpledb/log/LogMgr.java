@@ -4,6 +4,7 @@ import simpledb.server.SimpleDB;
 import simpledb.file.*;
 import static simpledb.file.Page.*;
 import java.util.*;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The low-level log manager.
@@ -13,6 +14,27 @@ import java.util.*;
  * The log manager does not understand the meaning of these
  * values, which are written and read by the
  * {@link simpledb.tx.recovery.RecoveryMgr recovery manager}.
+ * <p>
+ * The log manager holds the end of the log in a ring of log buffers.
+ * Records are appended to the current buffer; when it is full,
+ * it is handed to the log writer, a background thread that writes
+ * the full buffers to the log file in order, and the next buffer
+ * of the ring becomes current. Appending a record thus does no I/O,
+ * and waits only if every other buffer of the ring is still waiting
+ * to be written.
+ * <p>
+ * The LSN of a log record is the offset in the log file of the byte
+ * that follows the record, so every record has its own LSN, and the LSNs
+ * of later records are larger. The log manager knows the largest LSN
+ * that is durable: a thread that needs a record on disk returns at once
+ * if its LSN is not beyond it, and otherwise asks the log writer to flush
+ * the log and waits until the durable LSN reaches the record.
+ * The writer then also writes the records of the current buffer, and
+ * a single force serves every thread that is waiting,
+ * so concurrent commits are grouped.
+ * The writer can also wait a little before it writes the current buffer,
+ * as set by {@link #setGroupWait(long) setGroupWait},
+ * so that more records join the group.
  * @author Edward Sciore
  */
 public class LogMgr implements Iterable<BasicLogRecord> {
@@ -21,15 +43,31 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     * A value of 0 means that the pointer is the first value in the page.
     */
    public static final int LAST_POS = 0;
+   
+   /**
+    * The number of log buffers, unless another number is requested.
+    */
+   public static final int DEFAULT_BUFFERS = 8;
 
    private String logfile;
-   private Page mypage = new Page();
-   private Block currentblk;
+   private FileMgr fileMgr = SimpleDB.fileMgr();
+   private Page[] ring;
+   private int head = 0;        // the oldest full buffer not yet written
+   private int fullBuffers = 0; // the buffers handed to the writer
+   private Block currentblk;    // the block of the current buffer
    private int currentpos;
+   private volatile long groupWaitNanos = 0;
+   private long requestedLSN = -1;   // the largest LSN requested
+   private long durableLSN = -1;     // the largest LSN on disk
+   private boolean stopped = false;
+   private RuntimeException failure;
+   private Page partial = new Page(); // the writer's copy of the current buffer
+   private Thread writer;
 
    /**
-    * Creates the manager for the specified log file.
-    * If the log file does not yet exist, it is created
+    * Creates the manager for the specified log file,
+    * with the default number of log buffers.
+    * If the log file does not yet exist, the log starts
     * with an empty first block.
     * This constructor depends on a {@link FileMgr} object
     * that it gets from the method
@@ -41,55 +79,149 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     * @param logfile the name of the log file
     */
    public LogMgr(String logfile) {
+      this(logfile, DEFAULT_BUFFERS);
+   }
+
+   /**
+    * Creates the manager for the specified log file,
+    * as in {@link #LogMgr(String)}, with the specified number
+    * of log buffers, and starts its log writer.
+    * @param logfile the name of the log file
+    * @param numbuffers the number of log buffers, at least 2
+    */
+   public LogMgr(String logfile, int numbuffers) {
+      if (numbuffers < 2)
+         throw new IllegalArgumentException("invalid number of log buffers " + numbuffers);
       this.logfile = logfile;
-      int logsize = SimpleDB.fileMgr().size(logfile);
-      if (logsize == 0)
-         appendNewBlock();
+      ring = new Page[numbuffers];
+      for (int i = 0; i < numbuffers; i++)
+         ring[i] = new Page();
+      int logsize = fileMgr.size(logfile);
+      if (logsize == 0) {
+         currentblk = new Block(logfile, 0);
+         setLastRecordPosition(0);
+         currentpos = INT_SIZE;
+      }
       else {
          currentblk = new Block(logfile, logsize-1);
-         mypage.read(currentblk);
+         current().read(currentblk);
          currentpos = getLastRecordPosition() + INT_SIZE;
       }
+      // the records already in the log are on disk
+      durableLSN = currentLSN();
+      requestedLSN = durableLSN;
+      writer = new Thread(new Runnable() {
+         public void run() {
+            writeLog();
+         }
+      }, "simpledb-log-writer");
+      writer.setDaemon(true);
+      writer.start();
    }
 
    /**
     * Ensures that the log records corresponding to the
     * specified LSN has been written to disk.
     * All earlier log records will also be written to disk.
+    * The log file is then forced, so that the records
+    * are durable. The method returns at once if the records
+    * are durable already, as they are when a buffer is written
+    * after a commit has flushed the log, and otherwise
+    * waits until the log writer has forced the log past them.
+    * A negative LSN denotes no record, and is always durable.
+    * An LSN beyond the end of the log, such as one returned by
+    * another log manager, is taken to be the end of the log,
+    * since no record of this log will ever reach it.
     * @param lsn the LSN of a log record
     */
-   public void flush(int lsn) {
-      if (lsn >= currentLSN())
-         flush();
+   public synchronized void flush(long lsn) {
+      lsn = Math.min(lsn, currentLSN());
+      if (lsn <= durableLSN)
+         return;
+      if (lsn > requestedLSN) {
+         requestedLSN = lsn;
+         notifyAll();
+      }
+      boolean interrupted = false;
+      while (lsn > durableLSN) {
+         checkWriter();
+         try {
+            wait();
+         }
+         catch (InterruptedException e) {
+            // the record must be durable before the caller goes on
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+   }
+   
+   /**
+    * Sets how long the log writer waits before it writes
+    * the current buffer for a flush, so that the commits made
+    * meanwhile join the same force. A longer wait makes groups larger
+    * at the expense of the time each commit takes.
+    * @param micros the wait in microseconds, or 0 for no wait
+    */
+   public synchronized void setGroupWait(long micros) {
+      if (micros < 0)
+         throw new IllegalArgumentException("invalid wait " + micros);
+      groupWaitNanos = micros * 1000;
+   }
+   
+   /**
+    * Flushes the log and stops the log writer.
+    * A log whose writer has failed is not flushed.
+    * The log manager must not be used afterwards.
+    */
+   public void shutdown() {
+      long lsn;
+      synchronized (this) {
+         if (stopped)
+            return;
+         lsn = (failure == null) ? currentLSN() : -1;
+      }
+      flush(lsn);
+      synchronized (this) {
+         stopped = true;
+         notifyAll();
+      }
    }
 
    /**
     * Returns an iterator for the log records,
     * which will be returned in reverse order starting with the most recent.
+    * The log is flushed first, so that the iterator
+    * can read every record from the log file.
     * @see java.lang.Iterable#iterator()
     */
-   public synchronized Iterator<BasicLogRecord> iterator() {
-      flush();
-      return new LogIterator(currentblk);
+   public Iterator<BasicLogRecord> iterator() {
+      Block blk;
+      long lsn;
+      synchronized (this) {
+         blk = currentblk;
+         lsn = currentLSN();
+      }
+      flush(lsn);
+      return new LogIterator(blk);
    }
 
    /**
-    * Appends a log record to the file.
+    * Appends a log record to the current log buffer.
     * The record contains an arbitrary array of strings and integers.
     * The method also writes an integer to the end of each log record whose value
     * is the offset of the corresponding integer for the previous log record.
     * These integers allow log records to be read in reverse order.
     * @param rec the list of values
-    * @return the LSN of the final value
+    * @return the LSN of the record
     */
-   public synchronized int append(Object[] rec) {
+   public synchronized long append(Object[] rec) {
       int recsize = INT_SIZE;  // 4 bytes for the integer that points to the previous log record
       for (Object obj : rec)
          recsize += size(obj);
-      if (currentpos + recsize >= BLOCK_SIZE){ // the log record doesn't fit,
-         flush();        // so move to the next block.
-         appendNewBlock();
-      }
+      if (currentpos + recsize >= BLOCK_SIZE) // the log record doesn't fit,
+         moveToNextBuffer();                  // so move to the next block.
       for (Object obj : rec)
          appendVal(obj);
       finalizeRecord();
@@ -103,9 +235,9 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     */
    private void appendVal(Object val) {
       if (val instanceof String)
-         mypage.setString(currentpos, (String)val);
+         current().setString(currentpos, (String)val);
       else
-         mypage.setInt(currentpos, (Integer)val);
+         current().setInt(currentpos, (Integer)val);
       currentpos += size(val);
    }
 
@@ -124,29 +256,132 @@ public class LogMgr implements Iterable<BasicLogRecord> {
    }
 
    /**
-    * Returns the LSN of the most recent log record.
-    * As implemented, the LSN is the block number where the record is stored.
-    * Thus every log record in a block has the same LSN.
+    * Returns the LSN of the most recent log record,
+    * which is the offset in the log file of the byte that follows it.
     * @return the LSN of the most recent log record
     */
-   private int currentLSN() {
-      return currentblk.number();
+   private long currentLSN() {
+      return (long) currentblk.number() * BLOCK_SIZE + currentpos;
    }
 
    /**
-    * Writes the current page to the log file.
+    * Hands the current buffer to the log writer, and makes the
+    * next buffer of the ring current, for the next block of the log.
+    * The method waits while no buffer is free.
     */
-   private void flush() {
-      mypage.write(currentblk);
+   private void moveToNextBuffer() {
+      boolean interrupted = false;
+      while (fullBuffers == ring.length - 1) {
+         checkWriter();
+         try {
+            wait();
+         }
+         catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+      fullBuffers++;
+      currentblk = new Block(logfile, currentblk.number() + 1);
+      setLastRecordPosition(0);
+      currentpos = INT_SIZE;
+      notifyAll();
    }
-
+   
+   private Page current() {
+      return ring[(head + fullBuffers) % ring.length];
+   }
+   
+   private void checkWriter() {
+      if (failure != null)
+         throw new RuntimeException("cannot write log", failure);
+      if (stopped)
+         throw new IllegalStateException("log manager is shut down");
+   }
+   
    /**
-    * Clear the current page, and append it to the log file.
+    * The body of the log writer.
+    * The writer waits until there are full buffers or flushes to serve.
+    * It writes the full buffers in order; if a flush is requested,
+    * it also writes a copy of the current buffer and forces the file,
+    * which makes durable every record appended before the copy was made.
+    * The buffers are written without holding the lock on this object,
+    * since no appender modifies them until they are released.
     */
-   private void appendNewBlock() {
-      setLastRecordPosition(0);
-      currentpos = INT_SIZE;
-      currentblk = mypage.append(logfile);
+   private void writeLog() {
+      try {
+         while (true) {
+            boolean flushing;
+            synchronized (this) {
+               while (!stopped && fullBuffers == 0 && requestedLSN <= durableLSN)
+                  waitForWork();
+               if (stopped)
+                  return;
+               flushing = requestedLSN > durableLSN;
+            }
+            if (flushing && groupWaitNanos > 0)
+               LockSupport.parkNanos(groupWaitNanos);
+            int first, count, firstblk, lastblk;
+            long lastLSN;
+            boolean writeCurrent;
+            synchronized (this) {
+               first = head;
+               count = fullBuffers;
+               lastblk = currentblk.number();
+               firstblk = lastblk - count;
+               flushing = requestedLSN > durableLSN;
+               // the records of the full buffers end before the current block
+               lastLSN = (long) lastblk * BLOCK_SIZE;
+               writeCurrent = flushing && requestedLSN > lastLSN;
+               if (writeCurrent) {
+                  lastLSN = currentLSN();
+                  partial.copyFrom(current());
+               }
+            }
+            for (int i = 0; i < count; i++)
+               writeBlock(ring[(first + i) % ring.length], firstblk + i);
+            if (writeCurrent)
+               writeBlock(partial, lastblk);
+            if (flushing)
+               fileMgr.force(logfile);
+            synchronized (this) {
+               head = (first + count) % ring.length;
+               fullBuffers -= count;
+               if (flushing)
+                  durableLSN = Math.max(durableLSN, lastLSN);
+               notifyAll();
+            }
+         }
+      }
+      catch (RuntimeException e) {
+         synchronized (this) {
+            failure = e;
+            notifyAll();
+         }
+      }
+   }
+   
+   private void waitForWork() {
+      try {
+         wait();
+      }
+      catch (InterruptedException e) {
+         // the writer is stopped only by shutdown
+      }
+   }
+   
+   /**
+    * Writes the page to the specified block of the log file,
+    * appending the block if the file does not have it yet.
+    * The blocks are written in order, so a block that is appended
+    * always comes right after the end of the file.
+    */
+   private void writeBlock(Page p, int blknum) {
+      if (blknum < fileMgr.size(logfile))
+         p.write(new Block(logfile, blknum));
+      else if (p.append(logfile).number() != blknum)
+         throw new IllegalStateException("log block " + blknum + " out of order");
    }
 
    /**
@@ -157,16 +392,16 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     * is the offset of the integer for the last log record in the page.
     */
    private void finalizeRecord() {
-      mypage.setInt(currentpos, getLastRecordPosition());
+      current().setInt(currentpos, getLastRecordPosition());
       setLastRecordPosition(currentpos);
       currentpos += INT_SIZE;
    }
 
    private int getLastRecordPosition() {
-      return mypage.getInt(LAST_POS);
+      return current().getInt(LAST_POS);
    }
 
    private void setLastRecordPosition(int pos) {
-      mypage.setInt(LAST_POS, pos);
+      current().setInt(LAST_POS, pos);
    }
 }
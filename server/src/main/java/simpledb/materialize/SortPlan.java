@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.buffer.BufferReservation;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.query.*;
@@ -15,6 +16,7 @@ public class SortPlan implements Plan {
    private Transaction tx;
    private Schema sch;
    private RecordComparator comp;
+   private static final int MERGE_BUFFERS = 3;
    
    /**
     * Creates a sort plan for the specified query.
@@ -33,15 +35,26 @@ public class SortPlan implements Plan {
     * This method is where most of the action is.
     * Up to 2 sorted temporary tables are created,
     * and are passed into SortScan for final merging.
+    * While the runs are created and merged, the plan
+    * holds a reservation for the buffers of two input runs
+    * and one output run. The reservation is passed on to
+    * the sort scan, which releases it when it is closed.
     * @see simpledb.query.Plan#open()
     */
    public Scan open() {
-      Scan src = p.open();
-      List<TempTable> runs = splitIntoRuns(src);
-      src.close();
-      while (runs.size() > 2)
-         runs = doAMergeIteration(runs);
-      return new SortScan(runs, comp);
+      BufferReservation res = tx.reserveBuffers(1, MERGE_BUFFERS);
+      try {
+         Scan src = p.open();
+         List<TempTable> runs = splitIntoRuns(src);
+         src.close();
+         while (runs.size() > 2)
+            runs = doAMergeIteration(runs);
+         return new SortScan(runs, comp, res);
+      }
+      catch (RuntimeException e) {
+         res.release();
+         throw e;
+      }
    }
    
    /**
@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.buffer.BufferReservation;
 import simpledb.record.RID;
 import simpledb.query.*;
 import java.util.*;
@@ -17,6 +18,7 @@ public class SortScan implements Scan {
    private RecordComparator comp;
    private boolean hasmore1, hasmore2=false;
    private List<RID> savedposition;
+   private BufferReservation reservation;
    
    /**
     * Creates a sort scan, given a list of 1 or 2 runs.
@@ -26,7 +28,21 @@ public class SortScan implements Scan {
     * @param comp the record comparator
     */
    public SortScan(List<TempTable> runs, RecordComparator comp) {
+      this(runs, comp, null);
+   }
+   
+   /**
+    * Creates a sort scan, given a list of 1 or 2 runs,
+    * which holds the specified reservation of buffers
+    * until it is closed.
+    * @param runs the list of runs
+    * @param comp the record comparator
+    * @param reservation the buffers reserved for the merge, or null
+    */
+   public SortScan(List<TempTable> runs, RecordComparator comp,
+                   BufferReservation reservation) {
       this.comp = comp;
+      this.reservation = reservation;
       s1 = (UpdateScan) runs.get(0).open();
       hasmore1 = s1.next();
       if (runs.size() > 1) {
@@ -83,13 +99,16 @@ public class SortScan implements Scan {
    }
    
    /**
-    * Closes the two underlying scans.
+    * Closes the two underlying scans,
+    * and releases the reserved buffers.
     * @see simpledb.query.Scan#close()
     */
    public void close() {
       s1.close();
       if (s2 != null)
          s2.close();
+      if (reservation != null)
+         reservation.release();
    }
    
    /**
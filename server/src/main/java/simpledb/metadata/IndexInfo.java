@@ -63,8 +63,8 @@ public class IndexInfo {
     */
    public int blocksAccessed() {
       TableInfo idxti = new TableInfo("", schema());
-      int rpb = BLOCK_SIZE / idxti.recordLength();
-      int numblocks = si.recordsOutput() / rpb;
+      int rpb = Math.max(1, BLOCK_SIZE / idxti.recordLength());
+      int numblocks = Math.max(1, (si.recordsOutput() + rpb - 1) / rpb);
       // Call HashIndex.searchCost for hash indexing
       return HashIndex.searchCost(numblocks, rpb);
    }
@@ -1,5 +1,6 @@
 package simpledb.metadata;
 
+import simpledb.file.Page;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import java.util.*;
@@ -85,10 +86,11 @@ public class TableMgr {
     * @return the table's stored metadata
     */
    public TableInfo getTableInfo(String tblname, Transaction tx) {
+      byte[] name = Page.encode(tblname);
       RecordFile tcatfile = new RecordFile(tcatInfo, tx);
       int reclen = -1;
       while (tcatfile.next())
-         if(tcatfile.getString("tblname").equals(tblname)) {
+         if (tcatfile.stringEquals("tblname", name)) {
          reclen = tcatfile.getInt("reclength");
          break;
       }
@@ -98,7 +100,7 @@ public class TableMgr {
       Schema sch = new Schema();
       Map<String,Integer> offsets = new HashMap<String,Integer>();
       while (fcatfile.next())
-         if (fcatfile.getString("tblname").equals(tblname)) {
+         if (fcatfile.stringEquals("tblname", name)) {
          String fldname = fcatfile.getString("fldname");
          int fldtype    = fcatfile.getInt("type");
          int fldlen     = fcatfile.getInt("length");
@@ -109,4 +111,4 @@ public class TableMgr {
       fcatfile.close();
       return new TableInfo(tblname, sch, offsets, reclen);
    }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -14,12 +14,24 @@ public class BufferNeeds {
     * This method considers the various roots
     * of the specified output size (in blocks),
     * and returns the highest root that is less than
-    * the number of available buffers.
+    * the number of buffers that could currently be reserved.
     * @param size the size of the output file
-    * @return the highest number less than the number of available buffers, that is a root of the plan's output size
+    * @return the highest number less than the number of reservable buffers, that is a root of the plan's output size
     */
    public static int bestRoot(int size) {
-      int avail = SimpleDB.bufferMgr().available();
+      return bestRoot(SimpleDB.bufferMgr().reservable(), size);
+   }
+   
+   /**
+    * This method considers the various roots
+    * of the specified output size (in blocks),
+    * and returns the highest root that is less than
+    * the specified number of buffers.
+    * @param avail the number of buffers the scan may use
+    * @param size the size of the output file
+    * @return the highest number less than avail, that is a root of the plan's output size
+    */
+   public static int bestRoot(int avail, int size) {
       if (avail <= 1)
          return 1;
       int k = Integer.MAX_VALUE;
@@ -35,12 +47,24 @@ public class BufferNeeds {
     * This method considers the various factors
     * of the specified output size (in blocks),
     * and returns the highest factor that is less than
-    * the number of available buffers.
+    * the number of buffers that could currently be reserved.
     * @param size the size of the output file
-    * @return the highest number less than the number of available buffers, that is a factor of the plan's output size
+    * @return the highest number less than the number of reservable buffers, that is a factor of the plan's output size
     */
    public static int bestFactor(int size) {
-      int avail = SimpleDB.bufferMgr().available();
+      return bestFactor(SimpleDB.bufferMgr().reservable(), size);
+   }
+   
+   /**
+    * This method considers the various factors
+    * of the specified output size (in blocks),
+    * and returns the highest factor that is less than
+    * the specified number of buffers.
+    * @param avail the number of buffers the scan may use
+    * @param size the size of the output file
+    * @return the highest number less than avail, that is a factor of the plan's output size
+    */
+   public static int bestFactor(int avail, int size) {
       if (avail <= 1)
          return 1;
       int k = size;
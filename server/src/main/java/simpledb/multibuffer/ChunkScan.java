@@ -32,6 +32,7 @@ public class ChunkScan implements Scan {
       this.endbnum   = endbnum;
       this.sch = ti.schema();
       String filename = ti.fileName();
+      tx.readAhead(filename, startbnum, endbnum - startbnum + 1);
       for (int i=startbnum; i<=endbnum; i++) {
          Block blk = new Block(filename, i);
          pages.add(new RecordPage(blk, ti, tx));
@@ -108,4 +109,4 @@ public class ChunkScan implements Scan {
       rp = pages.get(current - startbnum);
       rp.moveToId(-1);
    }
-}
\ No newline at end of file
+}
\ No newline at end of file
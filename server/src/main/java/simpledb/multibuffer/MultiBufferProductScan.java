@@ -1,5 +1,6 @@
 package simpledb.multibuffer;
 
+import simpledb.buffer.BufferReservation;
 import simpledb.tx.Transaction;
 import simpledb.record.TableInfo;
 import simpledb.query.*;
@@ -14,10 +15,13 @@ public class MultiBufferProductScan implements Scan {
    private TableInfo ti;
    private Transaction tx;
    private int chunksize, nextblknum, filesize;
+   private BufferReservation reservation;
    
    
    /**
     * Creates the scan class for the product of the LHS scan and a table.
+    * The buffers for the chunks of the table are reserved
+    * until the scan is closed.
     * @param lhsscan the LHS scan
     * @param ti the metadata for the RHS table
     * @param tx the current transaction
@@ -27,7 +31,8 @@ public class MultiBufferProductScan implements Scan {
       this.ti = ti;
       this.tx = tx;
       filesize = tx.size(ti.fileName());
-      chunksize = BufferNeeds.bestFactor(filesize);
+      reservation = tx.reserveBuffers(1, Math.max(1, filesize));
+      chunksize = BufferNeeds.bestFactor(reservation.size(), filesize);
       beforeFirst();
    }
    
@@ -58,11 +63,12 @@ public class MultiBufferProductScan implements Scan {
    }
    
    /**
-    * Closes the current scans.
+    * Closes the current scans, and releases the reserved buffers.
     * @see simpledb.query.Scan#close()
     */
    public void close() {
       prodscan.close();
+      reservation.release();
    }
    
    /** 
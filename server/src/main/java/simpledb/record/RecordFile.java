@@ -81,6 +81,19 @@ public class RecordFile {
       return rp.getString(fldname);
    }
    
+   /**
+    * Returns true if the specified string field
+    * of the current record equals the specified string.
+    * Comparing encoded strings avoids decoding the field
+    * of every record that a search passes over.
+    * @param fldname the name of the field
+    * @param encoded the string, as encoded by {@link simpledb.file.Page#encode(String)}
+    * @return true if the field holds that string
+    */
+   public boolean stringEquals(String fldname, byte[] encoded) {
+      return rp.stringEquals(fldname, encoded);
+   }
+   
    /**
     * Sets the value of the specified field 
     * in the current record.
@@ -71,6 +71,18 @@ public class RecordPage {
       return tx.getString(blk, position);
    }
    
+   /**
+    * Returns true if the specified string field
+    * of the current record equals the specified string.
+    * @param fldname the name of the field.
+    * @param encoded the string, as encoded by {@link simpledb.file.Page#encode(String)}
+    * @return true if the field holds that string
+    */
+   public boolean stringEquals(String fldname, byte[] encoded) {
+      int position = fieldpos(fldname);
+      return tx.stringEquals(blk, position, encoded);
+   }
+   
    /**
     * Stores an integer at the specified field
     * of the current record.
@@ -1,6 +1,8 @@
 package simpledb.server;
 
+import java.nio.charset.Charset;
 import simpledb.file.FileMgr;
+import simpledb.file.Page;
 import simpledb.buffer.*;
 import simpledb.tx.Transaction;
 import simpledb.log.LogMgr;
@@ -24,6 +26,111 @@ import simpledb.index.planner.IndexUpdatePlanner;
  */
 public class SimpleDB {
    public static int BUFFER_SIZE = 8;
+   /**
+    * The amount of memory, in bytes, given to the buffer pool.
+    * If it is positive, the number of buffers is computed from it
+    * and BUFFER_SIZE is ignored. It is read from the system property
+    * simpledb.buffer.memory, which accepts a suffix of k, m or g,
+    * as in -Dsimpledb.buffer.memory=64m. The pool can be resized
+    * later through {@link BufferMgr#resize(int)} or JMX.
+    */
+   public static long BUFFER_MEMORY =
+         parseMemory(System.getProperty("simpledb.buffer.memory", "0"));
+   /**
+    * The number of independently locked partitions that the
+    * buffers are split into. A single partition behaves exactly
+    * like an unpartitioned buffer pool; large pools serving many
+    * concurrent clients should use about one partition per core.
+    */
+   public static int BUFFER_PARTITIONS = 1;
+   /**
+    * The name of the buffer replacement policy:
+    * one of "naive", "fifo", "lru", "clock", "lru2", "2q" or "arc".
+    * The last three resist being flushed by large sequential scans.
+    */
+   public static String BUFFER_POLICY = "naive";
+   /**
+    * The fraction of unpinned buffers that the background page
+    * cleaner tries to keep clean, so that replacing a buffer
+    * seldom has to write it first. A value of 0 disables the cleaner.
+    */
+   public static double CLEANER_TARGET = 0;
+   /**
+    * The number of blocks read ahead of a sequential scan.
+    * The buffer manager limits it to a quarter of the buffers;
+    * a value of 0, the default, disables read-ahead.
+    */
+   public static int READ_AHEAD = 0;
+   /**
+    * The number of threads that read blocks into the buffer pool
+    * on a miss. A miss is read without holding the buffer pool's
+    * lock even with no threads, the default, in which case
+    * the pinning thread performs the read.
+    */
+   public static int IO_THREADS = 0;
+   /**
+    * The block size of a new database, a power of 2 between
+    * 4K and 64K. An existing database keeps the block size
+    * stored in its header. It is read from the system property
+    * simpledb.page.size.
+    */
+   public static int PAGE_SIZE =
+         Integer.getInteger("simpledb.page.size", FileMgr.DEFAULT_BLOCK_SIZE);
+   /**
+    * The number of blocks by which a file grows when it is full,
+    * so that appends seldom change the size of the file on disk.
+    * It is read from the system property simpledb.file.extent.
+    */
+   public static int FILE_EXTENT =
+         Integer.getInteger("simpledb.file.extent", FileMgr.DEFAULT_EXTENT_SIZE);
+   /**
+    * The name of the character set in which a new database
+    * stores its strings. An existing database keeps the character
+    * set stored in its header. It is read from the system property
+    * simpledb.charset.
+    */
+   public static String CHARSET =
+         System.getProperty("simpledb.charset", FileMgr.DEFAULT_CHARSET.name());
+   /**
+    * The tables whose files are memory-mapped, as a comma-separated
+    * list of table names, or "*" to map all files of the database.
+    * Mapping suits tables that are mostly read. It is read from the
+    * system property simpledb.storage.mapped.
+    */
+   public static String MAPPED_TABLES =
+         System.getProperty("simpledb.storage.mapped", "");
+   /**
+    * Whether the files of the database bypass the operating system's
+    * page cache, so that the buffer pool is the only cache of their
+    * blocks. It suits a buffer pool that takes most of the memory.
+    * The log file keeps the page cache, since rollback and recovery
+    * read it back. It is read from the system property
+    * simpledb.storage.direct.
+    */
+   public static boolean DIRECT_IO = Boolean.getBoolean("simpledb.storage.direct");
+   /**
+    * The tables whose files are stored compressed, as a comma-separated
+    * list of table names. Compression suits large tables that are
+    * seldom written. It applies to the tables created afterwards;
+    * an existing table keeps its format. It is read from the
+    * system property simpledb.storage.compressed.
+    */
+   public static String COMPRESSED_TABLES =
+         System.getProperty("simpledb.storage.compressed", "");
+   /**
+    * How long, in microseconds, a group commit waits for more
+    * transactions to join it before forcing the log. Commits that
+    * arrive while the log is being forced are grouped even without
+    * a wait. It is read from the system property simpledb.log.groupwait.
+    */
+   public static int LOG_GROUP_WAIT = Integer.getInteger("simpledb.log.groupwait", 0);
+   /**
+    * The number of log buffers, each of which holds a block of the log.
+    * Records are appended to a buffer while the log writer writes
+    * the full ones. It is read from the system property simpledb.log.buffers.
+    */
+   public static int LOG_BUFFERS =
+         Integer.getInteger("simpledb.log.buffers", LogMgr.DEFAULT_BUFFERS);
    public static String LOG_FILE = "simpledb.log";
    
    private static FileMgr     fm;
@@ -59,7 +166,22 @@ public class SimpleDB {
     * @param dirname the name of the database directory
     */
    public static void initFileMgr(String dirname) {
-      fm = new FileMgr(dirname);
+      fm = new FileMgr(dirname, PAGE_SIZE, Charset.forName(CHARSET));
+      fm.setExtentSize(FILE_EXTENT);
+      for (String tblname : MAPPED_TABLES.split(",")) {
+         tblname = tblname.trim();
+         if (tblname.equals("*"))
+            fm.setMappedByDefault(true);
+         else if (tblname.length() > 0)
+            fm.setMapped(tblname + ".tbl", true);
+      }
+      for (String tblname : COMPRESSED_TABLES.split(",")) {
+         tblname = tblname.trim();
+         if (tblname.length() > 0)
+            fm.setCompressed(tblname + ".tbl", true);
+      }
+      fm.setDirect(LOG_FILE, false);
+      fm.setDirectByDefault(DIRECT_IO);
    }
    
    /**
@@ -67,8 +189,12 @@ public class SimpleDB {
     * @param dirname the name of the database directory
     */
    public static void initFileAndLogMgr(String dirname) {
+      // the log writer of an earlier initialization is stopped
+      if (logm != null)
+         logm.shutdown();
       initFileMgr(dirname);
-      logm = new LogMgr(LOG_FILE);
+      logm = new LogMgr(LOG_FILE, LOG_BUFFERS);
+      logm.setGroupWait(LOG_GROUP_WAIT);
    }
    
    /**
@@ -76,8 +202,54 @@ public class SimpleDB {
     * @param dirname the name of the database directory
     */
    public static void initFileLogAndBufferMgr(String dirname) {
+      // the threads of an earlier buffer manager are stopped
+      // before the log that it flushes to
+      if (bm != null)
+         bm.shutdown();
       initFileAndLogMgr(dirname);
-      bm = new BufferMgr(BUFFER_SIZE);
+      bm = new BufferMgr(numBuffers(), BUFFER_PARTITIONS);
+      bm.setPolicy(BUFFER_POLICY);
+      if (CLEANER_TARGET > 0)
+         bm.startPageCleaner(CLEANER_TARGET);
+      bm.setIOThreads(IO_THREADS);
+      bm.setReadAhead(READ_AHEAD);
+      bm.registerMBeans();
+   }
+   
+   /**
+    * Returns the number of buffers to allocate, 
+    * computed from BUFFER_MEMORY if it is set.
+    * @return the number of buffers
+    */
+   public static int numBuffers() {
+      if (BUFFER_MEMORY <= 0)
+         return BUFFER_SIZE;
+      long n = BUFFER_MEMORY / Page.BLOCK_SIZE;
+      return (int) Math.max(BUFFER_PARTITIONS, Math.min(n, Integer.MAX_VALUE));
+   }
+   
+   /**
+    * Parses an amount of memory, such as "512k" or "64m".
+    * @param value the amount of memory, with an optional suffix
+    * @return the number of bytes
+    */
+   static long parseMemory(String value) {
+      String s = value.trim().toLowerCase();
+      long unit = 1;
+      if (s.endsWith("k"))
+         unit = 1024;
+      else if (s.endsWith("m"))
+         unit = 1024 * 1024;
+      else if (s.endsWith("g"))
+         unit = 1024 * 1024 * 1024;
+      if (unit > 1)
+         s = s.substring(0, s.length() - 1);
+      try {
+         return Long.parseLong(s) * unit;
+      }
+      catch (NumberFormatException e) {
+         throw new RuntimeException("invalid buffer memory " + value);
+      }
    }
    
    /**
@@ -12,6 +12,7 @@ import java.util.*;
 class BufferList {
    private Map<Block,Buffer> buffers = new HashMap<Block,Buffer>();
    private List<Block> pins = new ArrayList<Block>();
+   private List<BufferReservation> reservations = new ArrayList<BufferReservation>();
    private BufferMgr bufferMgr = SimpleDB.bufferMgr();
    
    /**
@@ -27,10 +28,11 @@ class BufferList {
    
    /**
     * Pins the block and keeps track of the buffer internally.
+    * The buffer may be taken from the transaction's reservations.
     * @param blk a reference to the disk block
     */
    void pin(Block blk) {
-      Buffer buff = bufferMgr.pin(blk);
+      Buffer buff = bufferMgr.pin(blk, reservations);
       buffers.put(blk, buff);
       pins.add(blk);
    }
@@ -43,7 +45,7 @@ class BufferList {
     * @return a reference to the newly-created block
     */
    Block pinNew(String filename, PageFormatter fmtr) {
-      Buffer buff = bufferMgr.pinNew(filename, fmtr);
+      Buffer buff = bufferMgr.pinNew(filename, fmtr, reservations);
       Block blk = buff.block();
       buffers.put(blk, buff);
       pins.add(blk);
@@ -63,7 +65,25 @@ class BufferList {
    }
    
    /**
-    * Unpins any buffers still pinned by this transaction.
+    * Reserves buffers for one of the transaction's operators,
+    * and keeps track of the reservation, so that the transaction's
+    * pins can use the reserved buffers until it is released.
+    * @param min the smallest acceptable number of buffers
+    * @param max the largest useful number of buffers
+    * @return the reservation
+    */
+   BufferReservation reserve(int min, int max) {
+      for (Iterator<BufferReservation> iter = reservations.iterator(); iter.hasNext();)
+         if (iter.next().isReleased())
+            iter.remove();
+      BufferReservation res = bufferMgr.reserve(min, max);
+      reservations.add(res);
+      return res;
+   }
+   
+   /**
+    * Unpins any buffers still pinned by this transaction,
+    * and releases any reservations still held.
     */
    void unpinAll() {
       for (Block blk : pins) {
@@ -72,5 +92,8 @@ class BufferList {
       }
       buffers.clear();
       pins.clear();
+      for (BufferReservation res : reservations)
+         res.release();
+      reservations.clear();
    }
-}
\ No newline at end of file
+}
\ No newline at end of file
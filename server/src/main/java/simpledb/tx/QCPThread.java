@@ -31,10 +31,11 @@ public class QCPThread implements Runnable {
         
         // Flush all buffers
         SimpleDB.bufferMgr().definitelyFlushAll();
+        SimpleDB.fileMgr().forceAll();
         
         // Write a new CheckpointRecord
         CheckpointRecord ckptRec = new CheckpointRecord();
-        int recNum = ckptRec.writeToLog();
+        long recNum = ckptRec.writeToLog();
         // Flush the log
         SimpleDB.logMgr().flush(recNum);
         
@@ -5,6 +5,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import simpledb.buffer.*;
 import simpledb.file.Block;
+import simpledb.file.Page;
 import simpledb.server.SimpleDB;
 import simpledb.tx.concurrency.ConcurrencyMgr;
 import simpledb.tx.recovery.RecoveryMgr;
@@ -114,6 +115,34 @@ public class Transaction {
         myBuffers.pin(blk);
     }
 
+    /**
+     * Tells the buffer manager that the transaction is about to pin the
+     * specified blocks of a file, so that they can be read in the background.
+     * No locks are obtained, since no values are read.
+     *
+     * @param filename the name of the file
+     * @param blknum the number of the first block
+     * @param count the number of blocks
+     */
+    public void readAhead(String filename, int blknum, int count) {
+        SimpleDB.bufferMgr().readAhead(filename, blknum, count);
+    }
+
+    /**
+     * Reserves between min and max buffers for an operator of this
+     * transaction that needs several buffers at once. The operator should
+     * release the reservation when it is closed; any reservation still held
+     * is released when the transaction commits or rolls back.
+     *
+     * @param min the smallest acceptable number of buffers
+     * @param max the largest useful number of buffers
+     * @return the reservation
+     * @see BufferMgr#reserve(int, int)
+     */
+    public BufferReservation reserveBuffers(int min, int max) {
+        return myBuffers.reserve(min, max);
+    }
+
     /**
      * Unpins the specified block. The transaction looks up the buffer pinned to
      * this block, and unpins it.
@@ -154,6 +183,23 @@ public class Transaction {
         return buff.getString(offset);
     }
 
+    /**
+     * Returns true if the string stored at the specified offset of the
+     * specified block equals the specified string. Like
+     * {@link #getString(Block, int)}, the method first obtains an SLock on
+     * the block; the string on the page is compared without being decoded.
+     *
+     * @param blk a reference to a disk block
+     * @param offset the byte offset within the block
+     * @param encoded the string, as encoded by {@link Page#encode(String)}
+     * @return true if the strings are equal
+     */
+    public boolean stringEquals(Block blk, int offset, byte[] encoded) {
+        concurMgr.sLock(blk);
+        Buffer buff = myBuffers.getBuffer(blk);
+        return buff.stringEquals(offset, encoded);
+    }
+
     /**
      * Stores an integer at the specified offset of the specified block. The
      * method first obtains an XLock on the block. It then reads the current
@@ -168,7 +214,7 @@ public class Transaction {
     public void setInt(Block blk, int offset, int val) {
         concurMgr.xLock(blk);
         Buffer buff = myBuffers.getBuffer(blk);
-        int lsn = recoveryMgr.setInt(buff, offset, val);
+        long lsn = recoveryMgr.setInt(buff, offset, val);
         buff.setInt(offset, val, txnum, lsn);
     }
 
@@ -186,7 +232,7 @@ public class Transaction {
     public void setString(Block blk, int offset, String val) {
         concurMgr.xLock(blk);
         Buffer buff = myBuffers.getBuffer(blk);
-        int lsn = recoveryMgr.setString(buff, offset, val);
+        long lsn = recoveryMgr.setString(buff, offset, val);
         buff.setString(offset, val, txnum, lsn);
     }
 
@@ -226,4 +272,4 @@ public class Transaction {
         System.out.println("new transaction: " + nextTxNum);
         return nextTxNum;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
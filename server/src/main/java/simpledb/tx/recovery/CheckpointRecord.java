@@ -1,5 +1,6 @@
 package simpledb.tx.recovery;
 
+import simpledb.server.SimpleDB;
 import simpledb.log.BasicLogRecord;
 
 /**
@@ -30,9 +31,9 @@ public class CheckpointRecord implements LogRecord {
      *
      * @return the LSN of the last log value
      */
-    public int writeToLog() {
+    public long writeToLog() {
         Object[] rec = new Object[]{CHECKPOINT};
-        return logMgr.append(rec);
+        return SimpleDB.logMgr().append(rec);
     }
 
     public int op() {
@@ -1,5 +1,6 @@
 package simpledb.tx.recovery;
 
+import simpledb.server.SimpleDB;
 import simpledb.log.BasicLogRecord;
 
 /**
@@ -31,9 +32,9 @@ class CommitRecord implements LogRecord {
     * followed by the transaction id.
     * @return the LSN of the last log value
     */
-   public int writeToLog() {
+   public long writeToLog() {
       Object[] rec = new Object[] {COMMIT, txnum};
-      return logMgr.append(rec);
+      return SimpleDB.logMgr().append(rec);
    }
    
    public int op() {
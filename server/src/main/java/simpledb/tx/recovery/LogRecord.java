@@ -1,8 +1,5 @@
 package simpledb.tx.recovery;
 
-import simpledb.log.LogMgr;
-import simpledb.server.SimpleDB;
-
 /**
  * The interface implemented by each type of log record.
  *
@@ -17,14 +14,12 @@ public interface LogRecord {
             COMMIT = 2, ROLLBACK = 3,
             SETINT = 4, SETSTRING = 5;
 
-    static final LogMgr logMgr = SimpleDB.logMgr();
-
     /**
      * Writes the record to the log and returns its LSN.
      *
      * @return the LSN of the record in the log
      */
-    int writeToLog();
+    long writeToLog();
 
     /**
      * Returns the log record's type.
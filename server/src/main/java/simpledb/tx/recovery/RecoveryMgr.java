@@ -26,11 +26,15 @@ public class RecoveryMgr {
     }
 
     /**
-     * Writes a commit record to the log, and flushes it to disk.
+     * Writes a commit record to the log, and flushes it to disk. Since the
+     * log only supports undo, the transaction's modified pages must be
+     * durable before its commit record is: they are written, and then the
+     * data files are forced together before the commit record is appended.
      */
     public void commit() {
         SimpleDB.bufferMgr().flushAll(txnum);
-        int lsn = new CommitRecord(txnum).writeToLog();
+        SimpleDB.fileMgr().forceAll();
+        long lsn = new CommitRecord(txnum).writeToLog();
         SimpleDB.logMgr().flush(lsn);
     }
 
@@ -40,7 +44,8 @@ public class RecoveryMgr {
     public void rollback() {
         doRollback();
         SimpleDB.bufferMgr().flushAll(txnum);
-        int lsn = new RollbackRecord(txnum).writeToLog();
+        SimpleDB.fileMgr().forceAll();
+        long lsn = new RollbackRecord(txnum).writeToLog();
         SimpleDB.logMgr().flush(lsn);
     }
 
@@ -51,7 +56,8 @@ public class RecoveryMgr {
     public void recover() {
         doRecover();
         SimpleDB.bufferMgr().definitelyFlushAll();
-        int lsn = new CheckpointRecord().writeToLog();
+        SimpleDB.fileMgr().forceAll();
+        long lsn = new CheckpointRecord().writeToLog();
         SimpleDB.logMgr().flush(lsn);
 
     }
@@ -65,7 +71,7 @@ public class RecoveryMgr {
      * @param offset the offset of the value in the page
      * @param newval the value to be written
      */
-    public int setInt(Buffer buff, int offset, int newval) {
+    public long setInt(Buffer buff, int offset, int newval) {
         int oldval = buff.getInt(offset);
         Block blk = buff.block();
         if (isTempBlock(blk)) {
@@ -84,7 +90,7 @@ public class RecoveryMgr {
      * @param offset the offset of the value in the page
      * @param newval the value to be written
      */
-    public int setString(Buffer buff, int offset, String newval) {
+    public long setString(Buffer buff, int offset, String newval) {
         String oldval = buff.getString(offset);
         Block blk = buff.block();
         if (isTempBlock(blk)) {
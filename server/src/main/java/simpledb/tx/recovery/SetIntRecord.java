@@ -44,10 +44,10 @@ class SetIntRecord implements LogRecord {
     * integer value at that offset.
     * @return the LSN of the last log value
     */
-   public int writeToLog() {
+   public long writeToLog() {
       Object[] rec = new Object[] {SETINT, txnum, blk.fileName(),
          blk.number(), offset, val};
-      return logMgr.append(rec);
+      return SimpleDB.logMgr().append(rec);
    }
 
    public int op() {
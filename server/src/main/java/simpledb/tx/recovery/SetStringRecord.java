@@ -45,10 +45,10 @@ class SetStringRecord implements LogRecord {
     * string value at that offset.
     * @return the LSN of the last log value
     */
-   public int writeToLog() {
+   public long writeToLog() {
       Object[] rec = new Object[] {SETSTRING, txnum, blk.fileName(),
          blk.number(), offset, val};
-      return logMgr.append(rec);
+      return SimpleDB.logMgr().append(rec);
    }
    
    public int op() {
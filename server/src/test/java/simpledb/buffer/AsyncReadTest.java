@@ -0,0 +1,69 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class AsyncReadTest {
+
+    private static final String FILE = "asyncread";
+    private static final int BLOCKS = 200;
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        while (fm.size(FILE) < BLOCKS) {
+            p.setInt(0, fm.size(FILE));
+            p.append(FILE);
+        }
+    }
+
+    /**
+     * Misses read by the I/O threads hold the contents of their blocks.
+     */
+    @Test
+    public void testReadsByIOThreads() {
+        BufferMgr bm = new BufferMgr(8, 2);
+        bm.setIOThreads(4);
+        try {
+            for (int i = 0; i < BLOCKS; i++) {
+                Buffer buff = bm.pin(new Block(FILE, i));
+                assertEquals(i, buff.getInt(0));
+                bm.unpin(buff);
+            }
+        } finally {
+            bm.shutdown();
+        }
+    }
+
+    /**
+     * A pin whose thread is interrupted still waits for its read, so the
+     * buffer is never reassigned while an I/O thread fills its page. The
+     * interrupt status is kept.
+     */
+    @Test
+    public void testInterruptedPin() {
+        BufferMgr bm = new BufferMgr(4);
+        bm.setIOThreads(4);
+        try {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < BLOCKS; i++) {
+                    Thread.currentThread().interrupt();
+                    Buffer buff = bm.pin(new Block(FILE, i));
+                    assertTrue(Thread.interrupted());
+                    assertEquals(i, buff.getInt(0));
+                    bm.unpin(buff);
+                }
+            }
+        } finally {
+            Thread.interrupted();
+            bm.shutdown();
+        }
+    }
+}
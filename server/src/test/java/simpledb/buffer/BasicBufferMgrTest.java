@@ -132,20 +132,6 @@ public class BasicBufferMgrTest {
     result = instance.getBuffers()[3].block().number();
     assertEquals(expectedResult, result);
   }
-  /**
-   * Test of flushAll method, of class BasicBufferMgr.
-   */
-  @Test
-  @Ignore
-  public void testFlushAll() {
-    System.out.println("flushAll");
-    int txnum = 0;
-    BasicBufferMgr instance = null;
-    instance.flushAll(txnum);
-    // TODO review the generated test code and remove the default call to fail.
-    fail("The test case is a prototype.");
-  }
-
   /**
    * Test of pin method, of class BasicBufferMgr.
    */
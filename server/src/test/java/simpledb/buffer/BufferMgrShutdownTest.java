@@ -0,0 +1,54 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+public class BufferMgrShutdownTest {
+
+    /**
+     * Initializing the system again stops the threads of the buffer manager
+     * that it replaces.
+     */
+    @Test(timeout = 20000)
+    public void testReinitStopsThreads() throws InterruptedException {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        BufferMgr old = SimpleDB.bufferMgr();
+        old.setIOThreads(2);
+        old.setReadAhead(1);
+        old.startPageCleaner(0.5);
+        assertTrue(running() > 0);
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        while (running() > 0) {
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * A buffer manager that has been shut down still reads its misses.
+     */
+    @Test
+    public void testPinAfterShutdown() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        BufferMgr bm = new BufferMgr(4);
+        bm.setIOThreads(2);
+        bm.shutdown();
+        Buffer buff = bm.pin(new Block("shutdowntest", 0));
+        assertEquals(0, buff.getInt(0));
+        bm.unpin(buff);
+    }
+
+    private static int running() {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            String name = t.getName();
+            if (t.isAlive() && (name.startsWith("simpledb-io-")
+                    || name.equals("simpledb-read-ahead")
+                    || name.equals("simpledb-page-cleaner"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
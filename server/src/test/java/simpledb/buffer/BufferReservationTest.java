@@ -0,0 +1,106 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+public class BufferReservationTest {
+    private static final String FILE = "resvtest";
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+    }
+
+    /**
+     * The pins of other threads wait rather than take the buffers reserved
+     * in a partition, while the holder of the reservation gets them.
+     * Consecutive blocks of a file fall in alternate partitions.
+     */
+    @Test(timeout = 8000)
+    public void testReservedBuffersNotTaken() throws InterruptedException {
+        final BufferMgr bm = new BufferMgr(8, 2);
+        BufferReservation res = bm.reserve(6, 6);
+        assertEquals(6, res.size());
+        // the one unreserved buffer of each partition
+        bm.pin(new Block(FILE, 0));
+        bm.pin(new Block(FILE, 1));
+        final Buffer[] pinned = new Buffer[1];
+        Thread other = new Thread() {
+            public void run() {
+                pinned[0] = bm.pin(new Block(FILE, 2));
+            }
+        };
+        other.start();
+        List<BufferReservation> mine = Collections.singletonList(res);
+        List<Buffer> buffs = new ArrayList<Buffer>();
+        for (int i = 10; i < 16; i++) {
+            buffs.add(bm.pin(new Block(FILE, i), mine));
+        }
+        Thread.sleep(200);
+        assertTrue(other.isAlive());
+        // an unpinned reserved buffer goes back to the reservation
+        bm.unpin(buffs.get(0));
+        Thread.sleep(200);
+        assertTrue(other.isAlive());
+        res.release();
+        other.join();
+        assertEquals(new Block(FILE, 2), pinned[0].block());
+    }
+
+    /**
+     * A reservation that has to wait is granted as soon as enough buffers
+     * are unpinned.
+     */
+    @Test(timeout = 5000)
+    public void testReserveWaitsForUnpin() throws InterruptedException {
+        final BufferMgr bm = new BufferMgr(8);
+        List<Buffer> buffs = new ArrayList<Buffer>();
+        for (int i = 0; i < 7; i++) {
+            buffs.add(bm.pin(new Block(FILE, i)));
+        }
+        final BufferReservation[] granted = new BufferReservation[1];
+        Thread reserver = new Thread() {
+            public void run() {
+                granted[0] = bm.reserve(2, 2);
+            }
+        };
+        reserver.start();
+        Thread.sleep(200);
+        assertTrue(reserver.isAlive());
+        bm.unpin(buffs.get(0));
+        reserver.join();
+        assertEquals(2, granted[0].size());
+        granted[0].release();
+    }
+
+    /**
+     * A reservation that has to wait is granted as soon as another
+     * reservation is released.
+     */
+    @Test(timeout = 5000)
+    public void testReserveWaitsForRelease() throws InterruptedException {
+        final BufferMgr bm = new BufferMgr(8);
+        BufferReservation res = bm.reserve(6, 6);
+        assertEquals(0, bm.reservable());
+        final BufferReservation[] granted = new BufferReservation[1];
+        Thread reserver = new Thread() {
+            public void run() {
+                granted[0] = bm.reserve(4, 6);
+            }
+        };
+        reserver.start();
+        Thread.sleep(200);
+        assertTrue(reserver.isAlive());
+        res.release();
+        reserver.join();
+        assertEquals(6, granted[0].size());
+        granted[0].release();
+        assertEquals(6, bm.reservable());
+    }
+}
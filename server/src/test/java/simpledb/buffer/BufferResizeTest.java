@@ -0,0 +1,129 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class BufferResizeTest {
+
+    private static final String FILE = "bufferresize";
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        p.setInt(0, 0);
+        for (int i = 0; i < 8; i++) {
+            if (i < fm.size(FILE)) {
+                p.write(new Block(FILE, i));
+            } else {
+                p.append(FILE);
+            }
+        }
+    }
+
+    /**
+     * The buffers added to a pool are available, and a pin waiting for a
+     * buffer gets one of them.
+     */
+    @Test(timeout = 10000)
+    public void testGrow() throws InterruptedException {
+        final BufferMgr bm = new BufferMgr(4);
+        for (int i = 0; i < 4; i++) {
+            bm.pin(new Block(FILE, i));
+        }
+        final Buffer[] pinned = new Buffer[1];
+        Thread waiter = new Thread() {
+            public void run() {
+                pinned[0] = bm.pin(new Block(FILE, 4));
+            }
+        };
+        waiter.start();
+        Thread.sleep(200);
+        assertTrue(waiter.isAlive());
+        assertEquals(6, bm.resize(6));
+        waiter.join();
+        assertEquals(new Block(FILE, 4), pinned[0].block());
+        assertEquals(6, bm.size());
+        assertEquals(1, bm.available());
+    }
+
+    /**
+     * The dirty buffers removed from a pool are written first.
+     */
+    @Test
+    public void testShrinkWritesDirtyBuffers() {
+        BufferMgr bm = new BufferMgr(8);
+        List<Buffer> buffs = new ArrayList<Buffer>();
+        for (int i = 0; i < 8; i++) {
+            Buffer buff = bm.pin(new Block(FILE, i));
+            buff.setInt(0, 100 + i, 1, -1);
+            buffs.add(buff);
+        }
+        for (Buffer buff : buffs) {
+            bm.unpin(buff);
+        }
+        assertEquals(2, bm.resize(2));
+        assertEquals(2, bm.size());
+        assertEquals(2, bm.available());
+        Page p = new Page();
+        int written = 0;
+        for (int i = 0; i < 8; i++) {
+            p.read(new Block(FILE, i));
+            if (p.getInt(0) == 100 + i) {
+                written++;
+            }
+        }
+        // the two buffers that remain may still be dirty
+        assertTrue(written >= 6);
+        for (int i = 0; i < 8; i++) {
+            Buffer buff = bm.pin(new Block(FILE, i));
+            assertEquals(100 + i, buff.getInt(0));
+            bm.unpin(buff);
+        }
+    }
+
+    /**
+     * A pool cannot shrink below the number of its pinned buffers, but can
+     * shrink further once they are unpinned.
+     */
+    @Test
+    public void testShrinkStopsAtPinned() {
+        BufferMgr bm = new BufferMgr(6);
+        List<Buffer> buffs = new ArrayList<Buffer>();
+        for (int i = 0; i < 4; i++) {
+            buffs.add(bm.pin(new Block(FILE, i)));
+        }
+        assertEquals(4, bm.resize(1));
+        assertEquals(0, bm.available());
+        for (int i = 0; i < 4; i++) {
+            assertSame(buffs.get(i), bm.pin(new Block(FILE, i)));
+            bm.unpin(buffs.get(i));
+        }
+        for (Buffer buff : buffs) {
+            bm.unpin(buff);
+        }
+        assertEquals(1, bm.resize(1));
+    }
+
+    /**
+     * A pool cannot shrink below the number of its reserved buffers, but can
+     * shrink further once the reservation is released.
+     */
+    @Test
+    public void testShrinkStopsAtReserved() {
+        BufferMgr bm = new BufferMgr(8);
+        BufferReservation res = bm.reserve(4, 4);
+        assertEquals(4, bm.resize(1));
+        assertEquals(4, bm.available());
+        res.release();
+        assertEquals(1, bm.resize(1));
+    }
+}
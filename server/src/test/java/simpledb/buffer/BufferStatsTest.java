@@ -0,0 +1,122 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+public class BufferStatsTest {
+
+    private static final String FILE = "bufferstats";
+    private BufferMgr bm;
+    private BufferStats stats;
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        // with the naive policy, the first unpinned buffer is replaced
+        bm = new BufferMgr(2);
+        stats = bm.stats();
+    }
+
+    /**
+     * Pins, hits, misses, evictions and dirty evictions are counted for the
+     * pool and for the file.
+     */
+    @Test
+    public void testPinCounters() {
+        Buffer b0 = bm.pin(new Block(FILE, 0));      // miss
+        assertSame(b0, bm.pin(new Block(FILE, 0)));  // hit
+        Buffer b1 = bm.pin(new Block(FILE, 1));      // miss
+        b1.setInt(0, 5, 1, -1);
+        bm.unpin(b1);
+        Buffer b2 = bm.pin(new Block(FILE, 2));      // miss, evicts dirty block 1
+        bm.unpin(b2);
+        bm.unpin(b0);
+        bm.unpin(b0);
+        bm.pin(new Block(FILE, 0));                  // hit
+        bm.pin(new Block(FILE, 1));                  // miss, evicts block 2
+        for (BufferStats.FileStats fs : Arrays.asList(stats.global(), stats.file(FILE))) {
+            assertEquals(6, fs.getPins());
+            assertEquals(2, fs.getHits());
+            assertEquals(4, fs.getMisses());
+            assertEquals(2, fs.getEvictions());
+            assertEquals(1, fs.getDirtyEvictions());
+        }
+        assertEquals(0, stats.getWaits());
+        assertEquals(0, stats.getAborts());
+        assertEquals(Arrays.asList(FILE), stats.fileNames());
+        stats.reset();
+        assertEquals(0, stats.getPins());
+        assertEquals(0, stats.file(FILE).getPins());
+    }
+
+    /**
+     * A pin that waits for a buffer is counted as a wait, and a pin whose
+     * wait is interrupted as an abort.
+     */
+    @Test(timeout = 10000)
+    public void testWaitsAndAborts() throws InterruptedException {
+        Buffer b0 = bm.pin(new Block(FILE, 0));
+        bm.pin(new Block(FILE, 1));
+        Thread waiter = new Thread() {
+            public void run() {
+                bm.unpin(bm.pin(new Block(FILE, 2)));
+            }
+        };
+        waiter.start();
+        Thread.sleep(200);
+        bm.unpin(b0);
+        waiter.join();
+        assertEquals(1, stats.getWaits());
+        long[] histogram = stats.getWaitHistogram();
+        assertEquals(1, histogram[3]);  // between 100 and 1000 ms
+        assertEquals(0, stats.getAborts());
+
+        final boolean[] aborted = new boolean[1];
+        bm.pin(new Block(FILE, 0));
+        Thread aborter = new Thread() {
+            public void run() {
+                try {
+                    bm.pin(new Block(FILE, 3));
+                } catch (BufferAbortException e) {
+                    aborted[0] = true;
+                }
+            }
+        };
+        aborter.start();
+        Thread.sleep(200);
+        aborter.interrupt();
+        aborter.join();
+        assertTrue(aborted[0]);
+        assertEquals(1, stats.getAborts());
+    }
+
+    /**
+     * The temporary files are counted together, however many there are.
+     */
+    @Test
+    public void testTempFilesCountedTogether() {
+        for (int i = 0; i < 10; i++) {
+            bm.unpin(bm.pin(new Block("temp" + i + ".tbl", 0)));
+        }
+        assertEquals(Arrays.asList(BufferStats.TEMP_FILES), stats.fileNames());
+        assertEquals(10, stats.file("temp3.tbl").getPins());
+        assertEquals(10, stats.file(BufferStats.TEMP_FILES).getMisses());
+    }
+
+    /**
+     * The status of the pool describes the statistics and the buffers,
+     * rather than printing them.
+     */
+    @Test
+    public void testStatus() {
+        bm.pin(new Block(FILE, 4));
+        String status = bm.status();
+        assertTrue(status.startsWith(stats.toString()));
+        assertTrue(status.contains("Buffer 0: " + new Block(FILE, 4)));
+        assertTrue(status.contains("Buffer 1: null"));
+    }
+}
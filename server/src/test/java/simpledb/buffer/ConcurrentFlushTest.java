@@ -0,0 +1,137 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class ConcurrentFlushTest {
+
+    private static final String FILE = "concurrentflush";
+    private static final int BLOCKS = 48;
+    private static final int THREADS = 4;
+    private static final long DURATION = 1500; // milliseconds
+    private BufferMgr bm;
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        p.setInt(0, 0);
+        for (int i = 0; i < BLOCKS; i++) {
+            if (i < fm.size(FILE)) {
+                p.write(new Block(FILE, i));
+            } else {
+                p.append(FILE);
+            }
+        }
+        bm = new BufferMgr(8, 2);
+    }
+
+    @After
+    public void tearDown() {
+        bm.shutdown();
+    }
+
+    /**
+     * Commits, the page cleaner and full flushes write runs of buffers at the
+     * same time as the buffers are reassigned to other blocks. None of them
+     * deadlocks, and every block ends up on disk with its last value.
+     */
+    @Test(timeout = 60000)
+    public void testCleanerAndCommits() throws InterruptedException {
+        bm.startPageCleaner(1.0);
+        final int[] last = new int[BLOCKS];
+        final Throwable[] failure = new Throwable[1];
+        final long end = System.currentTimeMillis() + DURATION;
+        Thread[] threads = new Thread[THREADS + 1];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        Random rand = new Random(id);
+                        int txnum = id + 1;
+                        int val = 0;
+                        while (System.currentTimeMillis() < end) {
+                            // each thread modifies its own blocks
+                            for (int i = 0; i < 4; i++) {
+                                int blknum = rand.nextInt(BLOCKS / THREADS) * THREADS + id;
+                                Buffer buff = bm.pin(new Block(FILE, blknum));
+                                buff.setInt(0, ++val, txnum, -1);
+                                last[blknum] = val;
+                                bm.unpin(buff);
+                            }
+                            bm.flushAll(txnum);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+        }
+        threads[THREADS] = new Thread() {
+            public void run() {
+                while (System.currentTimeMillis() < end) {
+                    bm.definitelyFlushAll();
+                }
+            }
+        };
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure[0]);
+        bm.stopPageCleaner();
+        bm.definitelyFlushAll();
+        Page p = new Page();
+        for (int i = 0; i < BLOCKS; i++) {
+            p.read(new Block(FILE, i));
+            assertEquals("block " + i, last[i], p.getInt(0));
+        }
+    }
+
+    /**
+     * Two flushes that see the same buffers in opposite orders, as happens
+     * when a buffer is reassigned after one of them sorted its run, do not
+     * deadlock.
+     */
+    @Test(timeout = 30000)
+    public void testOppositeOrders() throws InterruptedException {
+        final Buffer a = bm.pin(new Block(FILE, 0));
+        final Buffer b = bm.pin(new Block(FILE, 1));
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            final List<Buffer> run = (t == 0) ? Arrays.asList(a, b) : Arrays.asList(b, a);
+            final int txnum = t + 1;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        run.get(0).setInt(0, i, txnum, -1);
+                        Buffer.flush(run, -1);
+                    }
+                }
+            };
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        bm.unpin(a);
+        bm.unpin(b);
+    }
+}
@@ -0,0 +1,88 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class DirtyPageFlushTest {
+
+    private static final String FILE = "dirtyflush";
+    private BufferMgr bm;
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        p.setInt(0, 0);
+        for (int i = 0; i < 8; i++) {
+            if (i < fm.size(FILE)) {
+                p.write(new Block(FILE, i));
+            } else {
+                p.append(FILE);
+            }
+        }
+        bm = new BufferMgr(8, 2);
+    }
+
+    /**
+     * Flushing a transaction writes the buffers that it modified, and only
+     * those.
+     */
+    @Test
+    public void testFlushTransaction() {
+        modify(0, 1, 10);
+        modify(1, 1, 11);
+        modify(2, 2, 12);
+        modify(3, 1, 13);
+        bm.flushAll(1);
+        assertEquals(10, onDisk(0));
+        assertEquals(11, onDisk(1));
+        assertEquals(0, onDisk(2));
+        assertEquals(13, onDisk(3));
+        bm.flushAll(2);
+        assertEquals(12, onDisk(2));
+    }
+
+    /**
+     * A buffer modified by a second transaction after the first is written
+     * when the second flushes, even though it was recorded for the first.
+     */
+    @Test
+    public void testModifiedAgain() {
+        modify(4, 1, 20);
+        modify(4, 2, 21);
+        bm.flushAll(1);
+        assertEquals(0, onDisk(4));
+        bm.flushAll(2);
+        assertEquals(21, onDisk(4));
+    }
+
+    /**
+     * Flushing every buffer writes the modifications of all transactions.
+     */
+    @Test
+    public void testFlushEverything() {
+        modify(5, 1, 30);
+        modify(6, 2, 31);
+        bm.definitelyFlushAll();
+        assertEquals(30, onDisk(5));
+        assertEquals(31, onDisk(6));
+    }
+
+    private void modify(int blknum, int txnum, int val) {
+        Buffer buff = bm.pin(new Block(FILE, blknum));
+        buff.setInt(0, val, txnum, -1);
+        bm.unpin(buff);
+    }
+
+    private int onDisk(int blknum) {
+        Page p = new Page();
+        p.read(new Block(FILE, blknum));
+        return p.getInt(0);
+    }
+}
@@ -0,0 +1,104 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class PageCleanerTest {
+
+    private static final String FILE = "pagecleaner";
+    private BufferMgr bm;
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        p.setInt(0, 0);
+        for (int i = 0; i < 8; i++) {
+            if (i < fm.size(FILE)) {
+                p.write(new Block(FILE, i));
+            } else {
+                p.append(FILE);
+            }
+        }
+        bm = new BufferMgr(8);
+    }
+
+    @After
+    public void tearDown() {
+        bm.shutdown();
+    }
+
+    /**
+     * The cleaner writes every dirty unpinned buffer when all of them are
+     * to be kept clean.
+     */
+    @Test(timeout = 5000)
+    public void testCleansUnpinnedBuffers() throws InterruptedException {
+        Buffer[] buffs = modifyAll(100);
+        for (Buffer buff : buffs) {
+            bm.unpin(buff);
+        }
+        bm.startPageCleaner(1.0);
+        for (int i = 0; i < 8; i++) {
+            while (onDisk(i) != 100 + i) {
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    /**
+     * The cleaner writes only enough buffers to keep the requested fraction
+     * of the unpinned buffers clean, and leaves the pinned buffers alone.
+     */
+    @Test(timeout = 5000)
+    public void testCleansFraction() throws InterruptedException {
+        Buffer[] buffs = modifyAll(200);
+        for (int i = 2; i < 8; i++) {
+            bm.unpin(buffs[i]);
+        }
+        // 3 of the 6 unpinned buffers are to be clean
+        bm.startPageCleaner(0.5);
+        while (written() < 3) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(300);
+        assertEquals(3, written());
+        assertEquals(0, onDisk(0));
+        assertEquals(0, onDisk(1));
+        bm.unpin(buffs[0]);
+        bm.unpin(buffs[1]);
+    }
+
+    private int written() {
+        int count = 0;
+        for (int i = 2; i < 8; i++) {
+            if (onDisk(i) == 200 + i) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // every block is pinned before any is unpinned, so none is replaced
+    private Buffer[] modifyAll(int base) {
+        Buffer[] buffs = new Buffer[8];
+        for (int i = 0; i < buffs.length; i++) {
+            buffs[i] = bm.pin(new Block(FILE, i));
+            buffs[i].setInt(0, base + i, 1, -1);
+        }
+        return buffs;
+    }
+
+    private int onDisk(int blknum) {
+        Page p = new Page();
+        p.read(new Block(FILE, blknum));
+        return p.getInt(0);
+    }
+}
@@ -0,0 +1,153 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class PageTableTest {
+
+    private static final String[] POLICIES =
+        {"naive", "fifo", "lru", "clock", "lru2", "2q", "arc"};
+    private static final String FILE = "pagetable";
+    private static final int BLOCKS = 20;
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        while (fm.size(FILE) < BLOCKS) {
+            p.setInt(0, fm.size(FILE));
+            p.append(FILE);
+        }
+    }
+
+    /**
+     * The page table maps the blocks of the buffers that are evicted and
+     * reassigned, under every policy.
+     */
+    @Test
+    public void testEviction() {
+        for (String policy : POLICIES) {
+            BasicBufferMgr bm = new BasicBufferMgr(4);
+            bm.setPolicy(policy);
+            pinAndUnpin(bm, new Random(7), 3, policy);
+        }
+    }
+
+    /**
+     * A discarded buffer leaves the page table, and its block is read again
+     * by the next pin.
+     */
+    @Test
+    public void testDiscard() {
+        for (String policy : POLICIES) {
+            BasicBufferMgr bm = new BasicBufferMgr(4);
+            bm.setPolicy(policy);
+            Block blk = new Block(FILE, 3);
+            Buffer buff = bm.pin(blk);
+            bm.discard(buff);
+            assertFalse(policy, bm.isResident(blk));
+            checkPageTable(bm, policy);
+            pinAndUnpin(bm, new Random(11), 3, policy);
+            buff = bm.pin(blk);
+            assertEquals(policy, 3, buff.getInt(0));
+            checkPageTable(bm, policy);
+            bm.unpin(buff);
+        }
+    }
+
+    /**
+     * The buffers that remain when a pool shrinks are renumbered, and the page
+     * table still maps their blocks to them, before and after the pool grows
+     * again.
+     */
+    @Test
+    public void testResize() {
+        for (String policy : POLICIES) {
+            BasicBufferMgr bm = new BasicBufferMgr(8);
+            bm.setPolicy(policy);
+            List<Buffer> pinned = new ArrayList<Buffer>();
+            for (int i = 0; i < 8; i++) {
+                Buffer buff = bm.pin(new Block(FILE, i));
+                if (i % 3 == 2) {
+                    pinned.add(buff);
+                } else {
+                    bm.unpin(buff);
+                }
+            }
+            assertEquals(policy, 4, bm.resize(4));
+            checkPageTable(bm, policy);
+            for (Buffer buff : pinned) {
+                assertSame(policy, buff, bm.pageTable().get(buff.block()));
+            }
+            for (Buffer buff : pinned) {
+                bm.unpin(buff);
+            }
+            pinAndUnpin(bm, new Random(13), 3, policy);
+            assertEquals(policy, 2, bm.resize(2));
+            checkPageTable(bm, policy);
+            pinAndUnpin(bm, new Random(17), 1, policy);
+            assertEquals(policy, 6, bm.resize(6));
+            checkPageTable(bm, policy);
+            pinAndUnpin(bm, new Random(19), 5, policy);
+        }
+    }
+
+    /**
+     * Pins random blocks, keeping at most the specified number pinned, and
+     * checks the page table after each pin and unpin.
+     */
+    private static void pinAndUnpin(BasicBufferMgr bm, Random rand, int maxPinned,
+            String policy) {
+        List<Buffer> pinned = new ArrayList<Buffer>();
+        for (int i = 0; i < 300; i++) {
+            if (pinned.size() == maxPinned
+                    || (!pinned.isEmpty() && rand.nextBoolean())) {
+                bm.unpin(pinned.remove(rand.nextInt(pinned.size())));
+            } else {
+                int blknum = rand.nextInt(BLOCKS);
+                Buffer buff = bm.pin(new Block(FILE, blknum));
+                assertEquals(policy, new Block(FILE, blknum), buff.block());
+                assertEquals(policy, blknum, buff.getInt(0));
+                pinned.add(buff);
+            }
+            checkPageTable(bm, policy);
+        }
+        for (Buffer buff : pinned) {
+            bm.unpin(buff);
+        }
+    }
+
+    /**
+     * Checks that each buffer is at its own index of the pool, that every
+     * pinned buffer is in the page table, and that each entry of the table
+     * maps a block to the pooled buffer holding it. An unpinned buffer can
+     * hold a block that is not in the table if it has been discarded.
+     */
+    private static void checkPageTable(BasicBufferMgr bm, String policy) {
+        Buffer[] pool = bm.getBuffers();
+        Map<Block, Buffer> table = bm.pageTable();
+        for (int i = 0; i < pool.length; i++) {
+            assertEquals(policy, i, pool[i].index());
+            Block blk = pool[i].block();
+            if (pool[i].isPinned()) {
+                assertSame(policy, pool[i], table.get(blk));
+            }
+        }
+        for (Map.Entry<Block, Buffer> e : table.entrySet()) {
+            Buffer buff = e.getValue();
+            assertEquals(policy, e.getKey(), buff.block());
+            assertTrue(policy, buff.index() >= 0 && buff.index() < pool.length);
+            assertSame(policy, buff, pool[buff.index()]);
+        }
+    }
+}
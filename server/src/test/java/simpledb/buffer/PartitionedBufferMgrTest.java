@@ -0,0 +1,192 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class PartitionedBufferMgrTest {
+
+    private static final String FILE = "partitioned";
+    private static final int BLOCKS = 64;
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        for (int i = 0; i < BLOCKS; i++) {
+            p.setInt(0, i);
+            if (i < fm.size(FILE)) {
+                p.write(new Block(FILE, i));
+            } else {
+                p.append(FILE);
+            }
+        }
+    }
+
+    /**
+     * The buffers are divided among the partitions, and resizing divides the
+     * new number of buffers in the same way.
+     */
+    @Test
+    public void testSizes() {
+        BufferMgr bm = new BufferMgr(10, 3);
+        assertEquals(10, bm.size());
+        assertEquals(10, bm.available());
+        assertEquals(10, bm.getBuffers().length);
+        assertEquals(7, bm.resize(7));
+        assertEquals(7, bm.size());
+        assertEquals(12, bm.resize(12));
+        assertEquals(12, bm.available());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyPartitions() {
+        new BufferMgr(3, 4);
+    }
+
+    /**
+     * A block pinned twice is held by the same buffer, whatever partition it
+     * falls in.
+     */
+    @Test
+    public void testSameBlockSameBuffer() {
+        BufferMgr bm = new BufferMgr(12, 4);
+        Buffer[] buffs = new Buffer[8];
+        for (int i = 0; i < buffs.length; i++) {
+            buffs[i] = bm.pin(new Block(FILE, i));
+            assertEquals(i, buffs[i].getInt(0));
+        }
+        for (int i = 0; i < buffs.length; i++) {
+            assertSame(buffs[i], bm.pin(new Block(FILE, i)));
+        }
+        assertEquals(4, bm.available());
+        for (int i = 0; i < buffs.length; i++) {
+            bm.unpin(buffs[i]);
+            bm.unpin(buffs[i]);
+        }
+        assertEquals(12, bm.available());
+    }
+
+    /**
+     * Threads that pin and unpin blocks concurrently always see the contents
+     * of the block they pinned, and leave every buffer unpinned.
+     */
+    @Test(timeout = 30000)
+    public void testConcurrentPins() throws InterruptedException {
+        final BufferMgr bm = new BufferMgr(16, 4);
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        Random rand = new Random(seed);
+                        for (int i = 0; i < 2000; i++) {
+                            int blknum = rand.nextInt(BLOCKS);
+                            Buffer buff = bm.pin(new Block(FILE, blknum));
+                            if (buff.getInt(0) != blknum) {
+                                throw new AssertionError("block " + blknum
+                                        + " read " + buff.getInt(0));
+                            }
+                            bm.unpin(buff);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure[0]);
+        assertEquals(16, bm.available());
+    }
+
+    /**
+     * Concurrent appends to a file get distinct new blocks, even though the
+     * new blocks fall in different partitions.
+     */
+    @Test(timeout = 30000)
+    public void testConcurrentPinNew() throws InterruptedException {
+        final BufferMgr bm = new BufferMgr(16, 4);
+        final String filename = "partitionednew";
+        final int start = SimpleDB.fileMgr().size(filename);
+        final Set<Block> blocks = Collections.synchronizedSet(new HashSet<Block>());
+        final PageFormatter fmtr = new PageFormatter() {
+            public void format(Page p) {
+                p.setInt(0, -1);
+            }
+        };
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 25; i++) {
+                        Buffer buff = bm.pinNew(filename, fmtr);
+                        blocks.add(buff.block());
+                        bm.unpin(buff);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(100, blocks.size());
+        assertEquals(start + 100, SimpleDB.fileMgr().size(filename));
+    }
+
+    /**
+     * A new block that another appender makes fall in another partition than
+     * predicted is still held by a single buffer.
+     */
+    @Test(timeout = 30000)
+    public void testPinNewWithOtherAppender() throws InterruptedException {
+        final BufferMgr bm = new BufferMgr(16, 4);
+        final String filename = "partitionedother";
+        final PageFormatter fmtr = new PageFormatter() {
+            public void format(Page p) {
+                p.setInt(0, -1);
+            }
+        };
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread appender = new Thread() {
+            public void run() {
+                Page p = new Page();
+                while (!done.get()) {
+                    p.append(filename);
+                }
+            }
+        };
+        appender.start();
+        try {
+            for (int i = 0; i < 500; i++) {
+                Buffer buff = bm.pinNew(filename, fmtr);
+                assertEquals(-1, buff.getInt(0));
+                assertSame(buff, bm.pin(buff.block()));
+                bm.unpin(buff);
+                bm.unpin(buff);
+            }
+        } finally {
+            done.set(true);
+            appender.join();
+        }
+        assertEquals(16, bm.available());
+    }
+}
@@ -0,0 +1,97 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class ReadAheadTest {
+
+    private static final String FILE = "readahead";
+    private static final int BLOCKS = 100;
+    private BufferMgr bm;
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        for (int i = 0; i < BLOCKS; i++) {
+            p.setInt(0, i);
+            if (i < fm.size(FILE)) {
+                p.write(new Block(FILE, i));
+            } else {
+                p.append(FILE);
+            }
+        }
+        bm = new BufferMgr(4);
+    }
+
+    /**
+     * A block read ahead is placed in the pool, and is then pinned without
+     * being read again.
+     */
+    @Test
+    public void testPrefetch() {
+        Block blk = new Block(FILE, 5);
+        assertTrue(bm.startPrefetch(blk));
+        Page p = new Page();
+        p.read(blk);
+        bm.prefetch(blk, p);
+        assertTrue(bm.isResident(blk));
+        assertFalse(bm.startPrefetch(blk));
+        Buffer buff = bm.pin(blk);
+        assertEquals(5, buff.getInt(0));
+        bm.unpin(buff);
+    }
+
+    /**
+     * A block that is modified, written and evicted while it is being read
+     * ahead is not replaced by the out-of-date page.
+     */
+    @Test
+    public void testPinDuringPrefetch() {
+        Block blk = new Block(FILE, 7);
+        assertTrue(bm.startPrefetch(blk));
+        Page p = new Page();
+        p.read(blk);
+
+        Buffer buff = bm.pin(blk);
+        buff.setInt(0, 1000, 1, -1);
+        bm.unpin(buff);
+        for (int i = 10; i < 20; i++) {
+            bm.unpin(bm.pin(new Block(FILE, i)));
+        }
+        assertFalse(bm.isResident(blk));
+
+        bm.prefetch(blk, p);
+        assertFalse(bm.isResident(blk));
+        buff = bm.pin(blk);
+        assertEquals(1000, buff.getInt(0));
+        bm.unpin(buff);
+    }
+
+    /**
+     * Scans that pin consecutive blocks read the right contents while the
+     * following blocks are read ahead.
+     */
+    @Test
+    public void testSequentialScan() {
+        bm = new BufferMgr(16, 2);
+        bm.setReadAhead(4);
+        try {
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < BLOCKS; i++) {
+                    Buffer buff = bm.pin(new Block(FILE, i));
+                    assertEquals(i, buff.getInt(0));
+                    bm.unpin(buff);
+                }
+            }
+        } finally {
+            bm.shutdown();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package simpledb.buffer;
+
+import java.util.Random;
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+/**
+ * Compares the hit ratios of the buffer replacement policies under a mixed
+ * workload: random lookups that mostly go to a small hot set of blocks and
+ * occasionally to a large cold table (the OLTP part), interrupted by
+ * sequential scans of a table that is much larger than the buffer pool.
+ * A scan-resistant policy keeps the hot set resident while the scans go by.
+ */
+public class ReplacementBenchmark {
+   private static final int POOL_SIZE = 100;
+   private static final int HOT_BLOCKS = 80;
+   private static final int COLD_BLOCKS = 5000;
+   private static final double HOT_FRACTION = 0.9;
+   private static final int SCAN_BLOCKS = 400;
+   private static final int ROUNDS = 50;
+   private static final int LOOKUPS_PER_ROUND = 1000;
+   private static final String[] POLICIES =
+      {"naive", "fifo", "lru", "clock", "lru2", "2q", "arc"};
+
+   public static void main(String[] args) {
+      SimpleDB.initFileAndLogMgr("benchdb");
+      System.out.println("pool of " + POOL_SIZE + " buffers, hot set of "
+                         + HOT_BLOCKS + " blocks, cold set of " + COLD_BLOCKS
+                         + " blocks, scans of " + SCAN_BLOCKS + " blocks");
+      System.out.println(String.format("%-8s %12s %12s", "policy", "oltp hits", "all hits"));
+      for (String policy : POLICIES)
+         run(policy);
+   }
+
+   private static void run(String policy) {
+      BasicBufferMgr bm = new BasicBufferMgr(POOL_SIZE);
+      bm.setPolicy(policy);
+      Random rand = new Random(42);
+      int lookups = 0, lookupHits = 0, accesses = 0, hits = 0;
+      for (int round = 0; round < ROUNDS; round++) {
+         for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+            Block blk;
+            if (rand.nextDouble() < HOT_FRACTION)
+               blk = new Block("temphot", rand.nextInt(HOT_BLOCKS));
+            else
+               blk = new Block("tempcold", rand.nextInt(COLD_BLOCKS));
+            boolean hit = access(bm, blk);
+            lookups++;
+            accesses++;
+            if (hit) {
+               lookupHits++;
+               hits++;
+            }
+         }
+         for (int b = 0; b < SCAN_BLOCKS; b++) {
+            accesses++;
+            if (access(bm, new Block("tempscan", b)))
+               hits++;
+         }
+      }
+      System.out.println(String.format("%-8s %11.1f%% %11.1f%%", policy,
+                         100.0 * lookupHits / lookups, 100.0 * hits / accesses));
+   }
+
+   private static boolean access(BasicBufferMgr bm, Block blk) {
+      boolean hit = bm.isResident(blk);
+      Buffer buff = bm.pin(blk);
+      bm.unpin(buff);
+      return hit;
+   }
+}
@@ -0,0 +1,156 @@
+package simpledb.buffer;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class ReplacementPolicyTest {
+
+    private static final String[] POLICIES =
+        {"naive", "fifo", "lru", "clock", "lru2", "2q", "arc"};
+    private static final String FILE = "replacement";
+    // directories, which cannot be read or written as files
+    private static final String BAD = "replacementdir";
+    private File dir = new File(System.getProperty("user.home"), "testdb");
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        for (String policy : POLICIES) {
+            new File(dir, BAD + policy).delete();
+            new File(dir, BAD + policy).mkdir();
+        }
+        Page p = new Page();
+        while (SimpleDB.fileMgr().size(FILE) < 4) {
+            p.append(FILE);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (String policy : POLICIES) {
+            new File(dir, BAD + policy).delete();
+        }
+    }
+
+    /**
+     * Under random lookups of a hot set interrupted by scans of a table larger
+     * than the pool, the scan-resistant policies keep more of the hot set
+     * than LRU does.
+     */
+    @Test
+    public void testScanResistance() {
+        int lru = hits("lru");
+        for (String policy : new String[] {"lru2", "2q", "arc"}) {
+            int hits = hits(policy);
+            assertTrue(policy + " has " + hits + " hits, lru " + lru, hits > lru);
+        }
+    }
+
+    /**
+     * A buffer chosen for replacement whose old block cannot be written keeps
+     * it, and can be chosen again once the write succeeds.
+     */
+    @Test
+    public void testFailedWrite() {
+        for (String policy : POLICIES) {
+            BasicBufferMgr bm = new BasicBufferMgr(2);
+            bm.setPolicy(policy);
+            Block bad = new Block(BAD + policy, 0);
+            assertTrue(bm.startPrefetch(bad));
+            bm.prefetch(bad, new Page());
+            Buffer buff = bm.pin(bad);
+            buff.setInt(0, 7, 1, -1);
+            bm.pin(new Block(FILE, 0));
+            bm.unpin(buff);
+            try {
+                bm.pin(new Block(FILE, 1));
+                fail(policy + " replaced a buffer it could not write");
+            } catch (RuntimeException e) {
+                // expected
+            }
+            assertTrue(policy, bm.isResident(bad));
+            assertSame(policy, buff, bm.pin(bad));
+            bm.unpin(buff);
+
+            // the write succeeds once the block's file can be created
+            new File(dir, BAD + policy).delete();
+            Buffer other = bm.pin(new Block(FILE, 1));
+            assertSame(policy, buff, other);
+            assertFalse(policy, bm.isResident(bad));
+            Page p = new Page();
+            p.read(bad);
+            assertEquals(policy, 7, p.getInt(0));
+        }
+    }
+
+    /**
+     * A buffer chosen for replacement by a pin whose read fails, or by an
+     * append that fails, can be chosen again.
+     */
+    @Test
+    public void testFailedRead() {
+        PageFormatter failing = new PageFormatter() {
+            public void format(Page p) {
+                throw new RuntimeException("cannot format");
+            }
+        };
+        for (String policy : POLICIES) {
+            BasicBufferMgr bm = new BasicBufferMgr(2);
+            bm.setPolicy(policy);
+            bm.pin(new Block(FILE, 0));
+            for (int i = 0; i < 3; i++) {
+                try {
+                    if (i % 2 == 0) {
+                        bm.pin(new Block(BAD + policy, i));
+                    } else {
+                        bm.pinNew(FILE, failing);
+                    }
+                    fail(policy + " assigned a buffer it could not fill");
+                } catch (RuntimeException e) {
+                    // expected
+                }
+                assertFalse(policy, bm.isResident(new Block(BAD + policy, i)));
+                assertEquals(policy, 1, bm.available());
+            }
+            Buffer buff = bm.pin(new Block(FILE, 1));
+            assertNotNull(policy, buff);
+            assertEquals(policy, new Block(FILE, 1), buff.block());
+        }
+    }
+
+    /**
+     * Replays a fixed trace and returns the number of hits.
+     */
+    private static int hits(String policy) {
+        BasicBufferMgr bm = new BasicBufferMgr(20);
+        bm.setPolicy(policy);
+        Random rand = new Random(42);
+        int hits = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 200; i++) {
+                Block blk = (rand.nextInt(10) < 9)
+                        ? new Block("temphot", rand.nextInt(15))
+                        : new Block("tempcold", rand.nextInt(1000));
+                if (bm.isResident(blk)) {
+                    hits++;
+                }
+                bm.unpin(bm.pin(blk));
+            }
+            for (int b = 0; b < 60; b++) {
+                Block blk = new Block("tempscan", b);
+                if (bm.isResident(blk)) {
+                    hits++;
+                }
+                bm.unpin(bm.pin(blk));
+            }
+        }
+        return hits;
+    }
+}
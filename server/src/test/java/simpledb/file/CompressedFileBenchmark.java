@@ -0,0 +1,53 @@
+package simpledb.file;
+
+import java.io.File;
+import simpledb.server.SimpleDB;
+
+/**
+ * Compares a table stored as plain blocks with the same table stored
+ * compressed. Each block holds records whose string fields are mostly
+ * padding, as the records of a history table do. The benchmark reports
+ * the size of each file on disk and the rate at which a full scan
+ * reads its blocks, so that the space saved can be weighed against
+ * the time spent decompressing.
+ */
+public class CompressedFileBenchmark {
+   private static final int BLOCKS = 4000;
+   private static final int SCANS = 10;
+   private static final int RECORD_SIZE = 4 + Page.STR_SIZE(40);
+
+   public static void main(String[] args) {
+      SimpleDB.initFileMgr("benchdb");
+      FileMgr fm = SimpleDB.fileMgr();
+      fm.setCompressed("benchzip.tbl", true);
+      System.out.println(BLOCKS + " blocks of " + Page.BLOCK_SIZE + " bytes");
+      System.out.println(String.format("%-10s %12s %14s", "format", "bytes", "scan blk/sec"));
+      run(fm, "benchplain.tbl");
+      run(fm, "benchzip.tbl");
+   }
+
+   private static void run(FileMgr fm, String filename) {
+      Page p = new Page();
+      while (fm.size(filename) < BLOCKS) {
+         int blknum = fm.size(filename);
+         for (int pos = 0; pos + RECORD_SIZE <= Page.BLOCK_SIZE; pos += RECORD_SIZE) {
+            p.setInt(pos, blknum);
+            p.setString(pos + 4, "event " + blknum + "/" + pos);
+         }
+         p.append(filename);
+      }
+      fm.forceAll();
+      long start = System.nanoTime();
+      for (int i = 0; i < SCANS; i++)
+         for (int blknum = 0; blknum < BLOCKS; blknum++) {
+            p.read(new Block(filename, blknum));
+            if (p.getInt(0) != blknum)
+               throw new RuntimeException("block " + blknum + " read wrong contents");
+         }
+      double scan = SCANS * BLOCKS / ((System.nanoTime() - start) / 1e9);
+      File f = new File(new File(System.getProperty("user.home"), "benchdb"), filename);
+      System.out.println(String.format("%-10s %12d %14.0f",
+                                       fm.isCompressed(filename) ? "compressed" : "plain",
+                                       f.length(), scan));
+   }
+}
@@ -0,0 +1,195 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class CompressedFileTest {
+   private File dir;
+   private File mapFile;
+   private RandomAccessFile raf;
+   private FileChannel fc;
+
+   @Before
+   public void setUp() throws IOException {
+      SimpleDB.initFileMgr("testdb");
+      dir = Files.createTempDirectory("compressed").toFile();
+      mapFile = new File(dir, "t.tbl" + CompressedFile.MAP_SUFFIX);
+      raf = new RandomAccessFile(new File(dir, "t.tbl"), "rw");
+      fc = raf.getChannel();
+   }
+
+   @After
+   public void tearDown() throws IOException {
+      raf.close();
+      for (File f : dir.listFiles())
+         f.delete();
+      dir.delete();
+   }
+
+   /**
+    * A block that compresses and one that does not, and is thus
+    * stored as is, both read back as written.
+    */
+   @Test
+   public void testRoundTrip() throws IOException {
+      CompressedFile cf = new CompressedFile(mapFile);
+      ByteBuffer sparse = sparse(7);
+      ByteBuffer random = random(1);
+      cf.write(fc, 0, sparse);
+      cf.write(fc, 1, random);
+      assertEquals(2, cf.size());
+      // the sparse block takes one granule, the random block a whole block
+      assertEquals(0, cf.slot(0));
+      assertEquals(1, cf.slot(1));
+      assertEquals(BLOCK_SIZE, storedLength(1));
+      assertContents(sparse, read(cf, 0));
+      assertContents(random, read(cf, 1));
+   }
+
+   /**
+    * A block rewritten with contents that no longer fit its slot moves,
+    * and the slot it leaves is reused only once the file is forced.
+    */
+   @Test
+   public void testMovedBlockFreesSlotAfterForce() throws IOException {
+      CompressedFile cf = new CompressedFile(mapFile);
+      cf.write(fc, 0, sparse(0));
+      cf.write(fc, 1, sparse(1));
+      ByteBuffer random = random(2);
+      cf.write(fc, 0, random);
+      int end = 2 + granules(BLOCK_SIZE + 4);
+      assertEquals(2, cf.slot(0));
+      assertContents(random, read(cf, 0));
+      // the old slot may still be the one in the saved map
+      cf.write(fc, 2, sparse(2));
+      assertEquals(end, cf.slot(2));
+      cf.force(fc);
+      cf.write(fc, 3, sparse(3));
+      assertEquals(0, cf.slot(3));
+      assertContents(sparse(3), read(cf, 3));
+   }
+
+   /**
+    * A file reopened from its saved map has the blocks and the size it
+    * had when forced, and reuses the gaps between its slots.
+    */
+   @Test
+   public void testReopen() throws IOException {
+      CompressedFile cf = new CompressedFile(mapFile);
+      for (int i = 0; i < 4; i++)
+         cf.write(fc, i, sparse(i));
+      // block 1 moves to the end, leaving a gap at granule 1
+      cf.write(fc, 1, random(1));
+      cf.force(fc);
+      cf.write(fc, 4, sparse(4));  // not in the saved map
+
+      cf = new CompressedFile(mapFile);
+      assertEquals(4, cf.size());
+      assertContents(sparse(0), read(cf, 0));
+      assertContents(random(1), read(cf, 1));
+      assertContents(sparse(3), read(cf, 3));
+      assertEquals(4, cf.slot(1));
+      cf.write(fc, 4, sparse(5));
+      assertEquals(1, cf.slot(4));
+      assertContents(sparse(5), read(cf, 4));
+   }
+
+   /**
+    * A block that was never written, within the file or beyond its end,
+    * reads as zeros.
+    */
+   @Test
+   public void testUnwrittenBlockIsZero() throws IOException {
+      CompressedFile cf = new CompressedFile(mapFile);
+      cf.write(fc, 3, sparse(3));
+      assertEquals(4, cf.size());
+      assertEquals(-1, cf.slot(1));
+      ByteBuffer zero = ByteBuffer.allocate(BLOCK_SIZE);
+      assertContents(zero, read(cf, 1));
+      assertContents(zero, read(cf, 10));
+   }
+
+   /**
+    * A slot whose length header is corrupt cannot be read.
+    */
+   @Test
+   public void testCorruptLength() throws IOException {
+      CompressedFile cf = new CompressedFile(mapFile);
+      cf.write(fc, 0, sparse(0));
+      cf.write(fc, 1, sparse(1));
+      corrupt(cf.slot(0), -1);
+      corrupt(cf.slot(1), BLOCK_SIZE + 1);
+      for (int blknum = 0; blknum < 2; blknum++) {
+         try {
+            read(cf, blknum);
+            fail("read a corrupt slot");
+         }
+         catch (IOException e) {
+            // expected
+         }
+      }
+   }
+
+   private ByteBuffer read(CompressedFile cf, int blknum) throws IOException {
+      ByteBuffer bb = ByteBuffer.allocate(BLOCK_SIZE);
+      // a block that reads as zeros must overwrite what the buffer held
+      while (bb.hasRemaining())
+         bb.put((byte) 0x5a);
+      cf.read(fc, blknum, bb);
+      return bb;
+   }
+
+   private void corrupt(int slot, int len) throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(4);
+      header.putInt(0, len);
+      fc.write(header, (long) slot * CompressedFile.GRANULE);
+   }
+
+   private int storedLength(int slot) throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(4);
+      fc.read(header, (long) slot * CompressedFile.GRANULE);
+      return header.getInt(0);
+   }
+
+   private static void assertContents(ByteBuffer expected, ByteBuffer actual) {
+      byte[] e = new byte[BLOCK_SIZE];
+      byte[] a = new byte[BLOCK_SIZE];
+      ByteBuffer ed = expected.duplicate();
+      ed.clear();
+      ed.get(e);
+      ByteBuffer ad = actual.duplicate();
+      ad.clear();
+      ad.get(a);
+      assertArrayEquals(e, a);
+   }
+
+   // a block holding a few values, which compresses to a single granule
+   private static ByteBuffer sparse(int seed) {
+      ByteBuffer bb = ByteBuffer.allocate(BLOCK_SIZE);
+      for (int pos = 0; pos < 64; pos += 4)
+         bb.putInt(pos, seed * 1000 + pos);
+      return bb;
+   }
+
+   // a block of random bytes, which does not compress
+   private static ByteBuffer random(int seed) {
+      byte[] bytes = new byte[BLOCK_SIZE];
+      new Random(seed).nextBytes(bytes);
+      return ByteBuffer.wrap(bytes);
+   }
+
+   private static int granules(int bytes) {
+      return (bytes + CompressedFile.GRANULE - 1) / CompressedFile.GRANULE;
+   }
+}
@@ -0,0 +1,133 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class DatabaseHeaderTest {
+   private static final String DB = "headertest";
+   private File dir = new File(System.getProperty("user.home"), DB);
+   private int pageSize;
+
+   @Before
+   public void setUp() {
+      pageSize = SimpleDB.PAGE_SIZE;
+      delete(dir);
+   }
+
+   @After
+   public void tearDown() {
+      SimpleDB.PAGE_SIZE = pageSize;
+      delete(dir);
+      // the other tests expect the block size of their own database
+      SimpleDB.initFileMgr("testdb");
+   }
+
+   /**
+    * A database created with a block size other than the default keeps it
+    * when it is reopened, whatever size is then requested.
+    */
+   @Test
+   public void testNonDefaultBlockSize() {
+      SimpleDB.PAGE_SIZE = 8192;
+      SimpleDB.initFileMgr(DB);
+      assertEquals(8192, SimpleDB.fileMgr().blockSize());
+      assertEquals(8192, Page.BLOCK_SIZE);
+      Page p = new Page();
+      p.setInt(8000, 42);
+      Block blk = p.append("t.tbl");
+
+      SimpleDB.PAGE_SIZE = FileMgr.DEFAULT_BLOCK_SIZE;
+      SimpleDB.initFileMgr(DB);
+      assertEquals(8192, SimpleDB.fileMgr().blockSize());
+      assertEquals(8192, Page.BLOCK_SIZE);
+      p = new Page();
+      p.read(blk);
+      assertEquals(42, p.getInt(8000));
+   }
+
+   /**
+    * A database that has no header predates configurable block sizes,
+    * and is opened with blocks of 400 bytes, as it is again once the
+    * header has been written.
+    */
+   @Test
+   public void testLegacyDatabase() throws IOException {
+      dir.mkdir();
+      RandomAccessFile f = new RandomAccessFile(new File(dir, "legacy.tbl"), "rw");
+      try {
+         f.setLength(2 * FileMgr.LEGACY_BLOCK_SIZE);
+         f.seek(FileMgr.LEGACY_BLOCK_SIZE + 12);
+         f.writeInt(7);
+      }
+      finally {
+         f.close();
+      }
+      for (int i = 0; i < 2; i++) {
+         SimpleDB.initFileMgr(DB);
+         FileMgr fm = SimpleDB.fileMgr();
+         assertTrue(new File(dir, FileMgr.HEADER_FILE).exists());
+         assertEquals(FileMgr.LEGACY_BLOCK_SIZE, fm.blockSize());
+         assertEquals(Charset.defaultCharset(), fm.charset());
+         assertEquals(2, fm.size("legacy.tbl"));
+         Page p = new Page();
+         p.read(new Block("legacy.tbl", 1));
+         assertEquals(7, p.getInt(12));
+      }
+   }
+
+   /**
+    * A header whose block size is not one that a database can have,
+    * or that is cut short, is refused.
+    */
+   @Test
+   public void testInvalidHeader() throws IOException {
+      SimpleDB.initFileMgr(DB);
+      File header = new File(dir, FileMgr.HEADER_FILE);
+      int[] sizes = {0, -4096, 3000, 2048, 131072};
+      for (int size : sizes) {
+         RandomAccessFile f = new RandomAccessFile(header, "rw");
+         try {
+            f.seek(4);
+            f.writeInt(size);
+         }
+         finally {
+            f.close();
+         }
+         assertRefused(size);
+      }
+      RandomAccessFile f = new RandomAccessFile(header, "rw");
+      try {
+         f.setLength(6);
+      }
+      finally {
+         f.close();
+      }
+      assertRefused(-1);
+   }
+
+   private void assertRefused(int size) {
+      int blocksize = Page.BLOCK_SIZE;
+      try {
+         new FileMgr(DB);
+         fail("opened a database whose header gives a block size of " + size);
+      }
+      catch (RuntimeException e) {
+         assertEquals(blocksize, Page.BLOCK_SIZE);
+      }
+   }
+
+   private static void delete(File f) {
+      File[] files = f.listFiles();
+      if (files != null)
+         for (File child : files)
+            delete(child);
+      f.delete();
+   }
+}
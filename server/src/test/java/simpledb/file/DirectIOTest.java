@@ -0,0 +1,95 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.nio.ByteBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class DirectIOTest {
+   private static final String DB = "directtest";
+   private static final String FILE = "direct.tbl";
+   private File dir = new File(System.getProperty("user.home"), DB);
+
+   @Before
+   public void setUp() {
+      delete(dir);
+   }
+
+   @After
+   public void tearDown() {
+      delete(dir);
+      // the other tests expect the block size of their own database
+      SimpleDB.initFileMgr("testdb");
+   }
+
+   /**
+    * A database whose blocks of 400 bytes cannot be transferred directly
+    * opens a file chosen for direct I/O as usual.
+    */
+   @Test
+   public void testUnalignedBlockSize() {
+      // a database without a header has the legacy block size
+      dir.mkdir();
+      SimpleDB.initFileMgr(DB);
+      FileMgr fm = SimpleDB.fileMgr();
+      assertEquals(FileMgr.LEGACY_BLOCK_SIZE, fm.blockSize());
+      fm.setDirect(FILE, true);
+      checkReadsAndWrites(new Page());
+      assertFalse(fm.isDirect(FILE));
+   }
+
+   /**
+    * A file chosen for direct I/O can be read and written, whether or not
+    * the file system supports direct I/O; if it does, a transfer that it
+    * rejects, from a page that is not aligned, makes the file fall back
+    * to buffered I/O.
+    */
+   @Test
+   public void testFallback() {
+      SimpleDB.initFileMgr(DB);
+      FileMgr fm = SimpleDB.fileMgr();
+      fm.setDirect(FILE, true);
+      checkReadsAndWrites(new Page());
+
+      ByteBuffer bb = ByteBuffer.allocateDirect(Page.BLOCK_SIZE + 1);
+      bb.position(1);
+      Page unaligned = new Page(bb.slice());
+      checkReadsAndWrites(unaligned);
+      assertFalse(fm.isDirect(FILE));
+      // the file stays readable by aligned pages, whatever its I/O was
+      Page p = new Page();
+      p.read(new Block(FILE, 0));
+      assertEquals(4, p.getInt(0));
+      assertEquals(8, fm.size(FILE));
+   }
+
+   private static void checkReadsAndWrites(Page p) {
+      FileMgr fm = SimpleDB.fileMgr();
+      int before = fm.size(FILE);
+      for (int i = 0; i < 4; i++) {
+         p.setInt(0, i);
+         p.setString(100, "block " + i);
+         assertEquals(before + i, p.append(FILE).number());
+      }
+      p.setInt(0, 4);
+      p.write(new Block(FILE, 0));
+      for (int i = 1; i < 4; i++) {
+         p.read(new Block(FILE, before + i));
+         assertEquals(i, p.getInt(0));
+         assertEquals("block " + i, p.getString(100));
+      }
+      p.read(new Block(FILE, 0));
+      assertEquals(4, p.getInt(0));
+   }
+
+   private static void delete(File f) {
+      File[] files = f.listFiles();
+      if (files != null)
+         for (File child : files)
+            delete(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,100 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class FileConcurrencyTest {
+   private static final int READERS = 4;
+   private static final int BLOCKS = 50;
+   private static final int READS = 2000;
+   private static final int APPENDS = 500;
+   private static final String APPEND_FILE = "concurrentappend.tbl";
+
+   @Before
+   public void setUp() {
+      SimpleDB.initFileMgr("testdb");
+      new File(new File(System.getProperty("user.home"), "testdb"), APPEND_FILE).delete();
+      // a new file manager, which does not know the old length of the file
+      SimpleDB.initFileMgr("testdb");
+      FileMgr fm = SimpleDB.fileMgr();
+      Page p = new Page();
+      for (int r = 0; r < READERS; r++) {
+         String filename = readerFile(r);
+         for (int i = 0; i < BLOCKS; i++) {
+            p.setInt(0, r);
+            p.setInt(100, i);
+            if (i < fm.size(filename))
+               p.write(new Block(filename, i));
+            else
+               p.append(filename);
+         }
+      }
+   }
+
+   /**
+    * Threads reading their own files, while another thread appends to a
+    * file of its own, each read the contents of their blocks, and every
+    * append completes.
+    */
+   @Test(timeout = 60000)
+   public void testReadersAndAppender() throws InterruptedException {
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+      Thread appender = new Thread() {
+         public void run() {
+            try {
+               Page p = new Page();
+               for (int i = 0; i < APPENDS; i++) {
+                  p.setInt(0, i);
+                  assertEquals(i, p.append(APPEND_FILE).number());
+               }
+            }
+            catch (Throwable t) {
+               failure.compareAndSet(null, t);
+            }
+         }
+      };
+      Thread[] readers = new Thread[READERS];
+      for (int r = 0; r < READERS; r++) {
+         final int id = r;
+         readers[r] = new Thread() {
+            public void run() {
+               try {
+                  Page p = new Page();
+                  for (int i = 0; i < READS; i++) {
+                     int blknum = (i * 7 + id) % BLOCKS;
+                     p.read(new Block(readerFile(id), blknum));
+                     assertEquals(id, p.getInt(0));
+                     assertEquals(blknum, p.getInt(100));
+                  }
+               }
+               catch (Throwable t) {
+                  failure.compareAndSet(null, t);
+               }
+            }
+         };
+      }
+      appender.start();
+      for (Thread reader : readers)
+         reader.start();
+      appender.join();
+      for (Thread reader : readers)
+         reader.join();
+      if (failure.get() != null)
+         throw new AssertionError(failure.get());
+
+      assertEquals(APPENDS, SimpleDB.fileMgr().size(APPEND_FILE));
+      Page p = new Page();
+      for (int i = 0; i < APPENDS; i++) {
+         p.read(new Block(APPEND_FILE, i));
+         assertEquals(i, p.getInt(0));
+      }
+   }
+
+   private static String readerFile(int id) {
+      return "concurrentread" + id + ".tbl";
+   }
+}
@@ -0,0 +1,71 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.io.File;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class FileExtentTest {
+   private static final String FILE = "extenttest.tbl";
+   private File file = new File(new File(System.getProperty("user.home"), "testdb"), FILE);
+   private FileMgr fm;
+
+   @Before
+   public void setUp() {
+      SimpleDB.initFileMgr("testdb");
+      file.delete();
+      // a new file manager, which does not know the old length of the file
+      SimpleDB.initFileMgr("testdb");
+      fm = SimpleDB.fileMgr();
+      fm.setExtentSize(8);
+   }
+
+   /**
+    * A file grows on disk by a whole extent at a time, while its size is
+    * the number of blocks appended.
+    */
+   @Test
+   public void testAppendAllocatesExtent() {
+      Page p = new Page();
+      for (int i = 0; i < 3; i++) {
+         p.setInt(0, i);
+         assertEquals(i, p.append(FILE).number());
+      }
+      assertEquals(3, fm.size(FILE));
+      assertEquals(8L * BLOCK_SIZE, file.length());
+      for (int i = 3; i < 9; i++)
+         p.append(FILE);
+      assertEquals(9, fm.size(FILE));
+      assertEquals(16L * BLOCK_SIZE, file.length());
+      fm.setExtentSize(1);
+      for (int i = 9; i < 17; i++)
+         p.append(FILE);
+      assertEquals(17, fm.size(FILE));
+      assertEquals(17L * BLOCK_SIZE, file.length());
+   }
+
+   /**
+    * After a restart, the blocks that were allocated but never appended
+    * count as part of the file, and contain zeros.
+    */
+   @Test
+   public void testRestart() {
+      Page p = new Page();
+      for (int i = 0; i < 3; i++) {
+         p.setInt(0, i + 1);
+         p.append(FILE);
+      }
+      SimpleDB.initFileMgr("testdb");
+      fm = SimpleDB.fileMgr();
+      assertEquals(8, fm.size(FILE));
+      p = new Page();
+      for (int i = 0; i < 8; i++) {
+         p.read(new Block(FILE, i));
+         assertEquals((i < 3) ? i + 1 : 0, p.getInt(0));
+      }
+      assertEquals(8, p.append(FILE).number());
+      assertEquals(9, fm.size(FILE));
+   }
+}
@@ -0,0 +1,50 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class FileForceTest {
+   private FileMgr fm;
+
+   @Before
+   public void setUp() {
+      SimpleDB.initFileMgr("testdb");
+      fm = SimpleDB.fileMgr();
+   }
+
+   /**
+    * A file that has been appended to or written must be forced,
+    * and no longer needs to be once it has been.
+    */
+   @Test
+   public void testForceClearsWrittenFiles() {
+      Page p = new Page();
+      p.setInt(0, 1);
+      Block blk = p.append("forcetest.tbl");
+      assertFalse(fm.isSynced("forcetest.tbl"));
+      fm.forceAll();
+      assertTrue(fm.isSynced("forcetest.tbl"));
+      p.write(blk);
+      p.write(new Block("forcetest2.tbl", 0));
+      assertFalse(fm.isSynced("forcetest.tbl"));
+      assertFalse(fm.isSynced("forcetest2.tbl"));
+      fm.force("forcetest.tbl");
+      assertTrue(fm.isSynced("forcetest.tbl"));
+      assertFalse(fm.isSynced("forcetest2.tbl"));
+      fm.forceAll();
+      assertTrue(fm.isSynced("forcetest2.tbl"));
+   }
+
+   /**
+    * Temporary files are never forced.
+    */
+   @Test
+   public void testTempFilesNotForced() {
+      Page p = new Page();
+      Block blk = p.append("tempforcetest.tbl");
+      p.write(blk);
+      assertTrue(fm.isSynced("tempforcetest.tbl"));
+   }
+}
@@ -0,0 +1,59 @@
+package simpledb.file;
+
+import java.util.Random;
+import simpledb.server.SimpleDB;
+
+/**
+ * Measures the read throughput of the file manager as the number of reader
+ * threads grows. Each thread reads random blocks of two tables into its own
+ * page. Since reads do not lock the file manager, the throughput should
+ * grow with the number of threads until the disk or the cores are saturated.
+ */
+public class FileMgrBenchmark {
+   private static final int BLOCKS = 2000;
+   private static final int READS_PER_THREAD = 20000;
+   private static final int[] THREADS = {1, 2, 4, 8, 16};
+   private static final String[] FILES = {"benchA.tbl", "benchB.tbl"};
+
+   public static void main(String[] args) throws InterruptedException {
+      SimpleDB.initFileMgr("benchdb");
+      FileMgr fm = SimpleDB.fileMgr();
+      Page p = new Page();
+      for (String filename : FILES)
+         while (fm.size(filename) < BLOCKS) {
+            p.setInt(0, fm.size(filename));
+            p.append(filename);
+         }
+      System.out.println(BLOCKS + " blocks per file, "
+                         + READS_PER_THREAD + " reads per thread");
+      System.out.println(String.format("%-8s %12s", "threads", "reads/sec"));
+      for (int n : THREADS)
+         run(n);
+   }
+
+   private static void run(int n) throws InterruptedException {
+      Thread[] readers = new Thread[n];
+      for (int i = 0; i < n; i++) {
+         final long seed = i;
+         readers[i] = new Thread() {
+            public void run() {
+               Random rand = new Random(seed);
+               Page p = new Page();
+               for (int r = 0; r < READS_PER_THREAD; r++) {
+                  int blknum = rand.nextInt(BLOCKS);
+                  p.read(new Block(FILES[r % FILES.length], blknum));
+                  if (p.getInt(0) != blknum)
+                     throw new RuntimeException("block " + blknum + " read wrong contents");
+               }
+            }
+         };
+      }
+      long start = System.nanoTime();
+      for (Thread t : readers)
+         t.start();
+      for (Thread t : readers)
+         t.join();
+      double secs = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%-8d %12.0f", n, n * READS_PER_THREAD / secs));
+   }
+}
@@ -0,0 +1,57 @@
+package simpledb.file;
+
+import java.util.Random;
+import simpledb.server.SimpleDB;
+
+/**
+ * Compares reading a table through its file channel with reading it
+ * through a memory mapping. A full scan reads every block of the table in
+ * order; the lookups read random blocks, as an index lookup does.
+ * The table is small enough to stay in the operating system's cache,
+ * so the benchmark measures the cost of the reads rather than of the disk.
+ */
+public class MappedFileBenchmark {
+   private static final String FILE = "benchmap.tbl";
+   private static final int BLOCKS = 4000;
+   private static final int SCANS = 20;
+   private static final int LOOKUPS = 200000;
+
+   public static void main(String[] args) {
+      SimpleDB.initFileMgr("benchdb");
+      FileMgr fm = SimpleDB.fileMgr();
+      Page p = new Page();
+      while (fm.size(FILE) < BLOCKS) {
+         p.setInt(0, fm.size(FILE));
+         p.append(FILE);
+      }
+      System.out.println(BLOCKS + " blocks of " + Page.BLOCK_SIZE + " bytes");
+      System.out.println(String.format("%-8s %14s %14s", "storage", "scan blk/sec", "lookups/sec"));
+      run(fm, false);
+      run(fm, true);
+      fm.setMapped(FILE, false);
+   }
+
+   private static void run(FileMgr fm, boolean mapped) {
+      fm.setMapped(FILE, mapped);
+      Page p = new Page();
+      long start = System.nanoTime();
+      for (int i = 0; i < SCANS; i++)
+         for (int blknum = 0; blknum < BLOCKS; blknum++)
+            read(p, blknum);
+      double scan = SCANS * BLOCKS / ((System.nanoTime() - start) / 1e9);
+
+      Random rand = new Random(42);
+      start = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++)
+         read(p, rand.nextInt(BLOCKS));
+      double lookups = LOOKUPS / ((System.nanoTime() - start) / 1e9);
+      System.out.println(String.format("%-8s %14.0f %14.0f",
+                                       mapped ? "mapped" : "channel", scan, lookups));
+   }
+
+   private static void read(Page p, int blknum) {
+      p.read(new Block(FILE, blknum));
+      if (p.getInt(0) != blknum)
+         throw new RuntimeException("block " + blknum + " read wrong contents");
+   }
+}
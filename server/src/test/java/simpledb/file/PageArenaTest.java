@@ -0,0 +1,56 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import static simpledb.file.Page.BLOCK_SIZE;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class PageArenaTest {
+
+   @Before
+   public void setUp() {
+      SimpleDB.initFileMgr("testdb");
+   }
+
+   /**
+    * An arena for a pool larger than a slab can hold, such as a pool of
+    * 4 GB, grows by slabs of bounded size as its frames are allocated.
+    */
+   @Test
+   public void testLargePool() {
+      PageArena arena = new PageArena(1024 * 1024);
+      int perSlab = PageArena.MAX_SLAB / BLOCK_SIZE;
+      int n = perSlab + 1;
+      Map<Page,Integer> pages = new IdentityHashMap<Page,Integer>();
+      for (int i = 0; i < n; i++) {
+         Page p = arena.allocate();
+         p.setInt(0, i);
+         pages.put(p, i);
+      }
+      assertEquals(2 * perSlab, arena.capacity());
+      assertEquals(2L * PageArena.MAX_SLAB, arena.footprint());
+      for (Map.Entry<Page,Integer> e : pages.entrySet())
+         assertEquals((int) e.getValue(), e.getKey().getInt(0));
+   }
+
+   /**
+    * A small pool takes no more memory than its frames need,
+    * and released frames are reused before a new slab is added.
+    */
+   @Test
+   public void testSmallPool() {
+      PageArena arena = new PageArena(8);
+      Page[] pages = new Page[8];
+      for (int i = 0; i < pages.length; i++)
+         pages[i] = arena.allocate();
+      assertEquals(8L * BLOCK_SIZE, arena.footprint());
+      arena.release(pages[3]);
+      arena.allocate();
+      assertEquals(8, arena.capacity());
+      arena.allocate();
+      assertEquals(16, arena.capacity());
+   }
+}
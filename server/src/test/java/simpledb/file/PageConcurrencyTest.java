@@ -0,0 +1,105 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class PageConcurrencyTest {
+   private static final int READERS = 4;
+   private static final long MILLIS = 1000;
+   // the values straddle the cache lines of the page's aligned frame,
+   // so a reader can see one half copied by copyFrom and not the other
+   private static final int INTOFF = FileMgr.MIN_BLOCK_SIZE - 67;
+   private static final int STROFF = 61;
+   private static final int[] INTS = {0, 0xFFFFFFFF, 0x0000FFFF, 0xFFFF0000};
+   // a length read with its high bytes from the first string and its low
+   // byte from the second is 0xFFF, which is past the end of the page
+   private static final String[] STRINGS = {repeat('a', 0xF00), repeat('b', 0xFF), ""};
+
+   @Before
+   public void setUp() {
+      SimpleDB.initFileMgr("testdb");
+   }
+
+   /**
+    * Values read optimistically while a writer keeps rewriting them,
+    * one at a time or by copying a whole page, are never torn, and a
+    * length read while its string is being rewritten never makes a read
+    * go past the end of the page.
+    */
+   @Test
+   public void testOptimisticReads() throws InterruptedException {
+      final Page p = new Page();
+      final Set<Integer> ints = new HashSet<Integer>();
+      for (int val : INTS)
+         ints.add(val);
+      final Set<String> strings = new HashSet<String>(Arrays.asList(STRINGS));
+      final Set<Integer> hashes = new HashSet<Integer>();
+      for (String s : STRINGS)
+         hashes.add(Page.hash(Page.encode(s)));
+      final Page[] images = new Page[STRINGS.length];
+      for (int i = 0; i < images.length; i++) {
+         images[i] = new Page();
+         images[i].setInt(INTOFF, INTS[i]);
+         images[i].setString(STROFF, STRINGS[i]);
+      }
+      p.copyFrom(images[0]);
+
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+      final long end = System.currentTimeMillis() + MILLIS;
+      Thread writer = new Thread() {
+         public void run() {
+            for (int i = 0; System.currentTimeMillis() < end; i++) {
+               if (i % 2 == 0)
+                  p.copyFrom(images[i % images.length]);
+               else {
+                  p.setInt(INTOFF, INTS[i % INTS.length]);
+                  p.setString(STROFF, STRINGS[i % STRINGS.length]);
+               }
+            }
+         }
+      };
+      Thread[] readers = new Thread[READERS];
+      for (int r = 0; r < READERS; r++) {
+         readers[r] = new Thread() {
+            public void run() {
+               byte[] encoded = Page.encode(STRINGS[1]);
+               try {
+                  while (System.currentTimeMillis() < end && failure.get() == null) {
+                     int val = p.getInt(INTOFF);
+                     assertTrue("torn int " + val, ints.contains(val));
+                     String s = p.getString(STROFF);
+                     assertTrue("torn string of length " + s.length(), strings.contains(s));
+                     int h = p.hashString(STROFF);
+                     assertTrue("torn hash " + h, hashes.contains(h));
+                     p.stringEquals(STROFF, encoded);
+                     p.compareString(STROFF, encoded);
+                  }
+               }
+               catch (Throwable t) {
+                  failure.compareAndSet(null, t);
+               }
+            }
+         };
+      }
+      writer.start();
+      for (Thread reader : readers)
+         reader.start();
+      writer.join();
+      for (Thread reader : readers)
+         reader.join();
+      if (failure.get() != null)
+         throw new AssertionError(failure.get());
+   }
+
+   private static String repeat(char c, int n) {
+      char[] chars = new char[n];
+      Arrays.fill(chars, c);
+      return new String(chars);
+   }
+}
@@ -0,0 +1,134 @@
+package simpledb.file;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.nio.charset.Charset;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class PageStringTest {
+   private static final String DB = "stringtest";
+   private static final String[] STRINGS = {
+      "", "a", "ab", "abc", "abd", "abcdefghij", "b", "Z",
+      "h\u00e9llo", "hello", "\u00e9t\u00e9", "\u65e5\u672c\u8a9e", "\u65e5\u672c"
+   };
+   private File dir = new File(System.getProperty("user.home"), DB);
+   private String charset;
+
+   @Before
+   public void setUp() {
+      charset = SimpleDB.CHARSET;
+      delete(dir);
+      SimpleDB.CHARSET = "UTF-8";
+      SimpleDB.initFileMgr(DB);
+   }
+
+   @After
+   public void tearDown() {
+      SimpleDB.CHARSET = charset;
+      delete(dir);
+      // the other tests expect the character set of their own database
+      SimpleDB.initFileMgr("testdb");
+   }
+
+   @Test
+   public void testEncode() {
+      Charset utf8 = Charset.forName("UTF-8");
+      assertEquals(utf8, Page.charset());
+      Page p = new Page();
+      for (String s : STRINGS) {
+         assertArrayEquals(s.getBytes(utf8), Page.encode(s));
+         p.setString(100, s);
+         assertEquals(s, p.getString(100));
+         assertEquals(Page.encode(s).length, p.getInt(100));
+      }
+   }
+
+   /**
+    * Comparing a stored string with an encoded one gives the same answers
+    * as decoding the stored string first.
+    */
+   @Test
+   public void testCompareStrings() {
+      Page p = new Page();
+      for (String s : STRINGS) {
+         p.setString(100, s);
+         for (String t : STRINGS) {
+            byte[] encoded = Page.encode(t);
+            assertEquals(s + " = " + t, p.getString(100).equals(t),
+                  p.stringEquals(100, encoded));
+            assertEquals(s + " ? " + t, Integer.signum(s.compareTo(t)),
+                  Integer.signum(p.compareString(100, encoded)));
+         }
+         assertEquals(Page.hash(Page.encode(s)), p.hashString(100));
+      }
+   }
+
+   /**
+    * A string that is a prefix of the stored one, or that the stored one
+    * is a prefix of, is not equal to it even when the bytes past it match.
+    */
+   @Test
+   public void testPrefixes() {
+      Page p = new Page();
+      p.setString(100, "abcdef");
+      p.setString(200, "abc");
+      // leave the bytes of a longer string after the shorter one
+      p.setString(300, "abcdef");
+      p.setString(300, "abc");
+      for (int offset : new int[] {200, 300}) {
+         assertTrue(p.stringEquals(offset, Page.encode("abc")));
+         assertFalse(p.stringEquals(offset, Page.encode("abcdef")));
+         assertFalse(p.stringEquals(offset, Page.encode("ab")));
+         assertTrue(p.compareString(offset, Page.encode("abcdef")) < 0);
+         assertTrue(p.compareString(offset, Page.encode("ab")) > 0);
+         assertEquals(Page.hash(Page.encode("abc")), p.hashString(offset));
+      }
+      assertTrue(p.compareString(100, Page.encode("abc")) > 0);
+   }
+
+   @Test
+   public void testStringSize() {
+      assertEquals(Page.INT_SIZE + 30, Page.STR_SIZE(10));
+      assertEquals(Page.INT_SIZE, Page.STR_SIZE(0));
+      SimpleDB.CHARSET = "ISO-8859-1";
+      delete(dir);
+      SimpleDB.initFileMgr(DB);
+      assertEquals(Page.INT_SIZE + 10, Page.STR_SIZE(10));
+   }
+
+   /**
+    * A database keeps the character set it was created with when it is
+    * reopened, whatever character set is then requested.
+    */
+   @Test
+   public void testCharsetFromHeader() {
+      SimpleDB.CHARSET = "ISO-8859-1";
+      delete(dir);
+      SimpleDB.initFileMgr(DB);
+      Page p = new Page();
+      p.setString(0, "\u00e9t\u00e9");
+      Block blk = p.append("t.tbl");
+
+      SimpleDB.CHARSET = "UTF-8";
+      SimpleDB.initFileMgr(DB);
+      assertEquals(Charset.forName("ISO-8859-1"), SimpleDB.fileMgr().charset());
+      assertEquals(Charset.forName("ISO-8859-1"), Page.charset());
+      assertEquals(Page.INT_SIZE + 10, Page.STR_SIZE(10));
+      p = new Page();
+      p.read(blk);
+      assertEquals(3, p.getInt(0));
+      assertEquals("\u00e9t\u00e9", p.getString(0));
+      assertTrue(p.stringEquals(0, Page.encode("\u00e9t\u00e9")));
+   }
+
+   private static void delete(File f) {
+      File[] files = f.listFiles();
+      if (files != null)
+         for (File child : files)
+            delete(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,166 @@
+package simpledb.log;
+
+import static org.junit.Assert.*;
+import static simpledb.file.Page.*;
+import java.io.File;
+import java.util.Iterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class LogMgrTest {
+   // the records written here are not those of the database's log
+   private static final String LOG = "logmgrtest.log";
+   private LogMgr logMgr;
+
+   @Before
+   public void setUp() {
+      SimpleDB.initFileMgr("testdb");
+      logMgr = new LogMgr(LOG);
+   }
+
+   @After
+   public void tearDown() {
+      logMgr.shutdown();
+   }
+
+   /**
+    * A flush returns once the block holding the record is on disk.
+    */
+   @Test(timeout = 10000)
+   public void testFlushMakesRecordDurable() {
+      long lsn = -1;
+      for (int i = 0; i < 3000; i++)
+         lsn = logMgr.append(new Object[] {i, "record " + i});
+      logMgr.flush(lsn);
+      Page p = new Page();
+      p.read(new Block(LOG, (int) (lsn / BLOCK_SIZE)));
+      // the last record of the block ends at the LSN, with its back pointer
+      assertEquals((int) (lsn % BLOCK_SIZE) - INT_SIZE, p.getInt(LogMgr.LAST_POS));
+   }
+
+   /**
+    * Concurrent commits that flush the log all return, with a group wait,
+    * and their records are then durable.
+    */
+   @Test(timeout = 20000)
+   public void testGroupCommit() throws InterruptedException {
+      logMgr.setGroupWait(1000);
+      final long[] lsns = new long[8];
+      Thread[] threads = new Thread[lsns.length];
+      for (int i = 0; i < threads.length; i++) {
+         final int id = i;
+         threads[i] = new Thread() {
+            public void run() {
+               for (int j = 0; j < 200; j++) {
+                  long lsn = logMgr.append(new Object[] {id, j});
+                  logMgr.flush(lsn);
+                  lsns[id] = lsn;
+               }
+            }
+         };
+         threads[i].start();
+      }
+      for (Thread t : threads)
+         t.join();
+      long last = 0;
+      for (long lsn : lsns)
+         last = Math.max(last, lsn);
+      Page p = new Page();
+      p.read(new Block(LOG, (int) (last / BLOCK_SIZE)));
+      assertEquals((int) (last % BLOCK_SIZE) - INT_SIZE, p.getInt(LogMgr.LAST_POS));
+   }
+
+   /**
+    * LSNs increase with every record, across blocks.
+    */
+   @Test
+   public void testLSNsIncrease() {
+      long prev = logMgr.append(new Object[] {0});
+      for (int i = 1; i < 2000; i++) {
+         long lsn = logMgr.append(new Object[] {i});
+         assertTrue(lsn > prev);
+         prev = lsn;
+      }
+   }
+
+   /**
+    * Every record is read back, in reverse order, from a log that
+    * has used its ring of buffers many times over.
+    */
+   @Test(timeout = 10000)
+   public void testRingWrapsAround() {
+      LogMgr small = new LogMgr("ringlog.log", 2);
+      try {
+         int n = 20000;
+         for (int i = 0; i < n; i++)
+            small.append(new Object[] {i, "record " + i});
+         // the file may also hold the records of earlier runs
+         Iterator<BasicLogRecord> iter = small.iterator();
+         for (int i = n - 1; i >= 0; i--) {
+            BasicLogRecord rec = iter.next();
+            assertEquals(i, rec.nextInt());
+            assertEquals("record " + i, rec.nextString());
+         }
+      }
+      finally {
+         small.shutdown();
+      }
+   }
+
+   /**
+    * An LSN beyond the end of the log, as returned by another log manager,
+    * does not keep a flush waiting.
+    */
+   @Test(timeout = 10000)
+   public void testFlushBeyondEndOfLog() {
+      LogMgr other = new LogMgr("otherlog.log");
+      try {
+         long lsn = -1;
+         for (int i = 0; i < 5000; i++)
+            lsn = other.append(new Object[] {"a longer record " + i});
+         long mine = logMgr.append(new Object[] {1});
+         assertTrue(lsn > mine);
+         logMgr.flush(lsn);
+      }
+      finally {
+         other.shutdown();
+      }
+   }
+
+   /**
+    * A log reopened after its file was extended by an extent continues in
+    * the last allocated block, and its records are read back across the
+    * empty blocks between the two runs.
+    */
+   @Test(timeout = 10000)
+   public void testSkipsEmptyBlocks() {
+      String log = "extentlog.log";
+      logMgr.shutdown();
+      new File(new File(System.getProperty("user.home"), "testdb"), log).delete();
+      SimpleDB.initFileMgr("testdb");
+      FileMgr fm = SimpleDB.fileMgr();
+      fm.setExtentSize(8);
+      logMgr = new LogMgr(log);
+      for (int i = 0; i < 10; i++)
+         logMgr.append(new Object[] {i});
+      logMgr.shutdown();
+      assertEquals(1, fm.size(log));
+
+      SimpleDB.initFileMgr("testdb");
+      assertEquals(8, SimpleDB.fileMgr().size(log));
+      logMgr = new LogMgr(log);
+      for (int i = 10; i < 15; i++)
+         logMgr.append(new Object[] {i});
+      Iterator<BasicLogRecord> iter = logMgr.iterator();
+      for (int i = 14; i >= 0; i--) {
+         assertTrue(iter.hasNext());
+         assertEquals(i, iter.next().nextInt());
+      }
+      assertFalse(iter.hasNext());
+   }
+}
@@ -0,0 +1,66 @@
+package simpledb.server;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.file.Page;
+
+public class BufferSizingTest {
+   private long memory;
+   private int partitions;
+
+   @Before
+   public void setUp() {
+      SimpleDB.initFileMgr("testdb");
+      memory = SimpleDB.BUFFER_MEMORY;
+      partitions = SimpleDB.BUFFER_PARTITIONS;
+   }
+
+   @After
+   public void tearDown() {
+      SimpleDB.BUFFER_MEMORY = memory;
+      SimpleDB.BUFFER_PARTITIONS = partitions;
+   }
+
+   @Test
+   public void testParseMemory() {
+      assertEquals(64L * 1024 * 1024, SimpleDB.parseMemory("64m"));
+      assertEquals(512L * 1024, SimpleDB.parseMemory("512k"));
+      assertEquals(2L * 1024 * 1024 * 1024, SimpleDB.parseMemory("2g"));
+      assertEquals(64L * 1024 * 1024, SimpleDB.parseMemory(" 64M "));
+      assertEquals(1000, SimpleDB.parseMemory("1000"));
+      assertEquals(0, SimpleDB.parseMemory("0"));
+   }
+
+   @Test
+   public void testParseBadMemory() {
+      String[] values = {"", "m", "abc", "12x", "1.5g", "64 mb"};
+      for (String value : values) {
+         try {
+            SimpleDB.parseMemory(value);
+            fail("parsed \"" + value + "\"");
+         }
+         catch (RuntimeException e) {
+            // expected
+         }
+      }
+   }
+
+   /**
+    * The number of buffers is the memory divided by the block size,
+    * but at least one per partition, or the fixed number if no
+    * memory is given.
+    */
+   @Test
+   public void testNumBuffers() {
+      SimpleDB.BUFFER_PARTITIONS = 1;
+      SimpleDB.BUFFER_MEMORY = 0;
+      assertEquals(SimpleDB.BUFFER_SIZE, SimpleDB.numBuffers());
+      SimpleDB.BUFFER_MEMORY = 64 * Page.BLOCK_SIZE + 100;
+      assertEquals(64, SimpleDB.numBuffers());
+      SimpleDB.BUFFER_PARTITIONS = 4;
+      SimpleDB.BUFFER_MEMORY = Page.BLOCK_SIZE;
+      assertEquals(4, SimpleDB.numBuffers());
+   }
+}
@@ -0,0 +1,102 @@
+package simpledb.tx.recovery;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.buffer.Buffer;
+import simpledb.buffer.BufferMgr;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+public class DurabilityTest {
+
+    private static final String FILE = "durable.tbl";
+    private static final String TEMP = "tempdurable.tbl";
+    private static final Block BLK = new Block(FILE, 0);
+    private static final Block TEMPBLK = new Block(TEMP, 0);
+
+    @Before
+    public void setUp() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        FileMgr fm = SimpleDB.fileMgr();
+        Page p = new Page();
+        if (fm.size(FILE) == 0) {
+            p.append(FILE);
+        }
+        if (fm.size(TEMP) == 0) {
+            p.append(TEMP);
+        }
+        fm.forceAll();
+    }
+
+    /**
+     * A commit forces the files that the transaction modified, except for
+     * temporary files, and the committed value is read after the database is
+     * opened again.
+     */
+    @Test
+    public void testCommit() {
+        int val = onDisk(BLK) + 1;
+        RecoveryMgr rm = new RecoveryMgr(900);
+        modify(rm, 900, BLK, val);
+        modify(rm, 900, TEMPBLK, val);
+        rm.commit();
+        FileMgr fm = SimpleDB.fileMgr();
+        assertTrue(fm.isSynced(FILE));
+        assertTrue(fm.isSynced(TEMP));
+        assertEquals(val, onDisk(TEMPBLK));
+
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        assertEquals(val, onDisk(BLK));
+    }
+
+    /**
+     * A rollback writes and forces the restored values.
+     */
+    @Test
+    public void testRollback() {
+        int val = onDisk(BLK);
+        RecoveryMgr rm = new RecoveryMgr(901);
+        modify(rm, 901, BLK, val + 1);
+        SimpleDB.bufferMgr().flushAll(901);
+        assertFalse(SimpleDB.fileMgr().isSynced(FILE));
+        rm.rollback();
+        assertTrue(SimpleDB.fileMgr().isSynced(FILE));
+
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        assertEquals(val, onDisk(BLK));
+    }
+
+    /**
+     * Recovery forces the data files before it writes its checkpoint.
+     */
+    @Test
+    public void testRecover() {
+        int val = onDisk(BLK);
+        RecoveryMgr rm = new RecoveryMgr(902);
+        modify(rm, 902, BLK, val + 1);
+        SimpleDB.bufferMgr().flushAll(902);
+        // the transaction never completes, so recovery undoes it
+        new RecoveryMgr(903).recover();
+        assertTrue(SimpleDB.fileMgr().isSynced(FILE));
+
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        assertEquals(val, onDisk(BLK));
+    }
+
+    private static void modify(RecoveryMgr rm, int txnum, Block blk, int val) {
+        BufferMgr bm = SimpleDB.bufferMgr();
+        Buffer buff = bm.pin(blk);
+        long lsn = rm.setInt(buff, 0, val);
+        buff.setInt(0, val, txnum, lsn);
+        bm.unpin(buff);
+    }
+
+    private static int onDisk(Block blk) {
+        Page p = new Page();
+        p.read(blk);
+        return p.getInt(0);
+    }
+}
@@ -0,0 +1,38 @@
+package simpledb.tx.recovery;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import simpledb.server.SimpleDB;
+
+public class LogRecordTest {
+
+    /**
+     * Records written after the system is initialized again go to the new
+     * log manager, and can be read back from it.
+     */
+    @Test(timeout = 10000)
+    public void testRecordsAfterReinit() {
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        new CommitRecord(41).writeToLog();
+        SimpleDB.initFileLogAndBufferMgr("testdb");
+        for (int i = 0; i < 2000; i++) {
+            new StartRecord(1000 + i).writeToLog();
+        }
+        long lsn = new CommitRecord(42).writeToLog();
+        SimpleDB.logMgr().flush(lsn);
+        LogRecordIterator iter = new LogRecordIterator();
+        LogRecord rec = iter.next();
+        assertEquals(LogRecord.COMMIT, rec.op());
+        assertEquals(42, rec.txNumber());
+        int starts = 0;
+        while (iter.hasNext()) {
+            rec = iter.next();
+            if (rec.op() == LogRecord.COMMIT) {
+                break;
+            }
+            starts++;
+        }
+        assertEquals(2000, starts);
+        assertEquals(41, rec.txNumber());
+    }
+}